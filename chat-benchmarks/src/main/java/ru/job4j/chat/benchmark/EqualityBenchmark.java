@@ -0,0 +1,63 @@
+package ru.job4j.chat.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code equals} and {@code hashCode} of the entities, which walk the
+ * whole object graph of a message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EqualityBenchmark {
+    private Message message;
+    private Message same;
+    private Person person;
+    private Person samePerson;
+
+    @Setup
+    public void setup() {
+        message = message();
+        same = message();
+        person = message.getPerson();
+        samePerson = same.getPerson();
+    }
+
+    private static Message message() {
+        Room room = Room.of("general");
+        room.setId(1);
+        Message m = Message.of(42, "hello", Person.of(7, "user", "password"));
+        m.setTime(new Timestamp(1_600_000_000_000L));
+        m.setRoom(room);
+        return m;
+    }
+
+    @Benchmark
+    public boolean messageEquals() {
+        return message.equals(same);
+    }
+
+    @Benchmark
+    public int messageHashCode() {
+        return message.hashCode();
+    }
+
+    @Benchmark
+    public boolean personEquals() {
+        return person.equals(samePerson);
+    }
+
+    @Benchmark
+    public int personHashCode() {
+        return person.hashCode();
+    }
+}
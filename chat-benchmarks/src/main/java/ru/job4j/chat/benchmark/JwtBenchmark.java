@@ -0,0 +1,46 @@
+package ru.job4j.chat.benchmark;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.*;
+
+/**
+ * Issuing a token as JWTAuthenticationFilter does after a login and a
+ * full verification of it, the path JWTAuthorizationFilter takes for a
+ * token it has not seen yet.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+    private JWTVerifier verifier;
+    private String token;
+
+    @Setup
+    public void setup() {
+        verifier = JWT.require(ALGORITHM).build();
+        token = create();
+    }
+
+    @Benchmark
+    public String create() {
+        return JWT.create()
+                .withSubject("user")
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(ALGORITHM);
+    }
+
+    @Benchmark
+    public DecodedJWT verify() {
+        return verifier.verify(token);
+    }
+}
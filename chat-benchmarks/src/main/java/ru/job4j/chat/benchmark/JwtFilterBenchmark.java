@@ -0,0 +1,57 @@
+package ru.job4j.chat.benchmark;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import ru.job4j.chat.filter.TokenVerifier;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.*;
+
+/**
+ * Per-request cost of turning an {@code Authorization} header into an
+ * authentication, as JWTAuthorizationFilter did before and does now.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtFilterBenchmark {
+    private String header;
+    private TokenVerifier tokens;
+
+    @Setup
+    public void setup() {
+        header = TOKEN_PREFIX + JWT.create()
+                .withSubject("user")
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(ALGORITHM);
+        tokens = new TokenVerifier(10_000);
+    }
+
+    /**
+     * The old filter: new algorithm and verifier, full verification.
+     */
+    @Benchmark
+    public UsernamePasswordAuthenticationToken rebuildVerifier() {
+        String user = JWT.require(Algorithm.HMAC512(SECRET.getBytes()))
+                .build()
+                .verify(header.replace(TOKEN_PREFIX, ""))
+                .getSubject();
+        return new UsernamePasswordAuthenticationToken(user, null, new ArrayList<>());
+    }
+
+    /**
+     * The current filter with a token seen before.
+     */
+    @Benchmark
+    public UsernamePasswordAuthenticationToken cachedToken() {
+        return tokens.authenticate(header);
+    }
+}
@@ -0,0 +1,55 @@
+package ru.job4j.chat.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing a page of messages with their author, role and room,
+ * as the message listing endpoints return them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageJsonBenchmark {
+    @Param({"10", "100", "500"})
+    private int size;
+
+    private ObjectMapper mapper;
+    private List<Message> page;
+
+    @Setup
+    public void setup() {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        Role role = Role.of(1, "ROLE_USER");
+        Room room = Room.of("general");
+        room.setId(1);
+        page = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Person author = Person.of(i % 20, "user" + i % 20, "$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z0dC6ouKBkSBHrBYZyW8xLBa");
+            author.setRole(role);
+            Message m = Message.of(i, "message number " + i, author);
+            m.setTime(new Timestamp(1_600_000_000_000L + i));
+            m.setRoom(room);
+            page.add(m);
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(page);
+    }
+}
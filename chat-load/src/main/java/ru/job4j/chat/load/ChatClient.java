@@ -0,0 +1,150 @@
+package ru.job4j.chat.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.HEADER_STRING;
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.SIGN_UP_URL;
+
+/**
+ * The calls a chat user makes, each one timed into {@link Stats}.
+ * One client is shared by all simulated users, the token is per user.
+ */
+public class ChatClient {
+    public static final String SIGN_UP = "sign-up";
+    public static final String LOGIN = "login";
+    public static final String POST = "post";
+    public static final String READ = "read";
+    public static final String IMPORT = "import";
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient http;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String baseUrl;
+    private final Stats stats;
+
+    public ChatClient(String baseUrl, int connections, Stats stats) {
+        this.baseUrl = baseUrl;
+        this.stats = stats;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(TIMEOUT)
+                .executor(Executors.newFixedThreadPool(connections))
+                .build();
+    }
+
+    public void signUp(String login, String password) throws IOException, InterruptedException {
+        send(SIGN_UP, HttpRequest.newBuilder(uri(SIGN_UP_URL))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(credentials(login, password))));
+    }
+
+    /**
+     * Logs in through JWTAuthenticationFilter and returns the Authorization header to use.
+     */
+    public String login(String login, String password) throws IOException, InterruptedException {
+        HttpResponse<String> res = send(LOGIN, HttpRequest.newBuilder(uri("/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(credentials(login, password))));
+        return res.headers().firstValue(HEADER_STRING)
+                .orElseThrow(() -> new IllegalStateException("No token for " + login));
+    }
+
+    public int personId(String token) throws IOException, InterruptedException {
+        return json(null, HttpRequest.newBuilder(uri("/users/me")).header(HEADER_STRING, token).GET())
+                .get("id").asInt();
+    }
+
+    public int createRoom(String token, String name) throws IOException, InterruptedException {
+        return json(null, HttpRequest.newBuilder(uri("/rooms/"))
+                .header(HEADER_STRING, token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        mapper.createObjectNode().put("name", name).toString())))
+                .get("id").asInt();
+    }
+
+    public void post(String token, int roomId, int uid, String text) throws IOException, InterruptedException {
+        send(POST, HttpRequest.newBuilder(uri("/rooms/" + roomId + "/create?uid=" + uid
+                        + "&text=" + URLEncoder.encode(text, StandardCharsets.UTF_8)))
+                .header(HEADER_STRING, token)
+                .POST(HttpRequest.BodyPublishers.noBody()));
+    }
+
+    /**
+     * Posts the texts through the bulk import, in one request.
+     */
+    public void importMessages(String token, int roomId, int uid, List<String> texts)
+            throws IOException, InterruptedException {
+        ArrayNode batch = mapper.createArrayNode();
+        for (String text : texts) {
+            ObjectNode message = batch.addObject().put("text", text);
+            message.putObject("person").put("id", uid);
+        }
+        send(IMPORT, HttpRequest.newBuilder(uri("/rooms/" + roomId + "/messages/batch"))
+                .header(HEADER_STRING, token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(batch.toString())));
+    }
+
+    public void read(String token, int roomId) throws IOException, InterruptedException {
+        send(READ, HttpRequest.newBuilder(uri("/rooms/" + roomId + "/messages"))
+                .header(HEADER_STRING, token)
+                .GET());
+    }
+
+    private JsonNode json(String endpoint, HttpRequest.Builder request) throws IOException, InterruptedException {
+        return mapper.readTree(send(endpoint, request).body());
+    }
+
+    /**
+     * Sends the request, records its latency under the endpoint unless it is
+     * {@code null}, and fails on a non-2xx answer.
+     */
+    private HttpResponse<String> send(String endpoint, HttpRequest.Builder request)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<String> res;
+        try {
+            res = http.send(request.timeout(TIMEOUT).build(), HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            if (endpoint != null) {
+                stats.error(endpoint);
+            }
+            throw e;
+        }
+        if (endpoint != null) {
+            if (res.statusCode() / 100 == 2) {
+                stats.record(endpoint, System.nanoTime() - start);
+            } else {
+                stats.error(endpoint);
+            }
+        }
+        if (res.statusCode() / 100 != 2) {
+            throw new IOException(request.build().uri().getPath() + " answered " + res.statusCode());
+        }
+        return res;
+    }
+
+    private String credentials(String login, String password) {
+        return mapper.createObjectNode().put("login", login).put("password", password).toString();
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+}
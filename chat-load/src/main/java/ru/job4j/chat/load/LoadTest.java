@@ -0,0 +1,159 @@
+package ru.job4j.chat.load;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.job4j.chat.ChatApplication;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the chat on a free local port against the database configured in
+ * its application.properties and drives it with simulated users. Every user
+ * signs up, logs in and then, until the time is up, posts a message to a
+ * random room, reads that room and waits for the think time. The
+ * {@code import} scenario compares the two ways of posting instead: every
+ * user posts {@code batch} messages one by one, then {@code batch} more with
+ * one bulk import, and waits for the think time; the messages per second
+ * each way are printed after the endpoints.
+ *
+ * <p>Options, all {@code --name=value}:
+ * <ul>
+ *     <li>{@code users} simulated users, 50</li>
+ *     <li>{@code scenario} {@code chat} or {@code import}, chat</li>
+ *     <li>{@code batch} messages per round of the import scenario, 100</li>
+ *     <li>{@code rooms} rooms they talk in, 10</li>
+ *     <li>{@code think-ms} pause after each read, 100</li>
+ *     <li>{@code warmup-s} seconds left out of the report, 10</li>
+ *     <li>{@code duration-s} measured seconds, 60</li>
+ *     <li>{@code url} an already running node instead of starting one</li>
+ * </ul>
+ * Other arguments are passed on to the application, e.g.
+ * {@code --spring.datasource.url=...}.
+ */
+public class LoadTest {
+    private static final String PASSWORD = "load-test-password";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length == 2 && List.of("users", "rooms", "think-ms", "warmup-s", "duration-s", "url",
+                    "scenario", "batch").contains(kv[0])) {
+                options.put(kv[0], kv[1]);
+            } else {
+                appArgs.add(arg);
+            }
+        }
+        try {
+            run(options, appArgs);
+        } finally {
+            System.exit(0);
+        }
+    }
+
+    private static void run(Map<String, String> options, List<String> appArgs) throws Exception {
+        int users = Integer.parseInt(options.getOrDefault("users", "50"));
+        int rooms = Integer.parseInt(options.getOrDefault("rooms", "10"));
+        long thinkMs = Long.parseLong(options.getOrDefault("think-ms", "100"));
+        long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup-s", "10")));
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration-s", "60")));
+        boolean imports = "import".equals(options.getOrDefault("scenario", "chat"));
+        int batch = Integer.parseInt(options.getOrDefault("batch", "100"));
+
+        ConfigurableApplicationContext app = null;
+        String url = options.get("url");
+        if (url == null) {
+            List<String> nodeArgs = new ArrayList<>(appArgs);
+            nodeArgs.add("--server.port=0");
+            /* the users post faster than a person would, the limiter still runs but must not refuse */
+            if (appArgs.stream().noneMatch(a -> a.startsWith("--chat.ratelimit.user.per-second="))) {
+                nodeArgs.add("--chat.ratelimit.user.per-second=1000");
+            }
+            app = new SpringApplicationBuilder(ChatApplication.class).run(nodeArgs.toArray(new String[0]));
+            url = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+        }
+        Stats stats = new Stats();
+        ChatClient client = new ChatClient(url, users, stats);
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        ExecutorService pool = Executors.newFixedThreadPool(users);
+        try {
+            String admin = "load-" + run + "-0";
+            client.signUp(admin, PASSWORD);
+            String adminToken = client.login(admin, PASSWORD);
+            int[] roomIds = new int[rooms];
+            for (int i = 0; i < rooms; i++) {
+                roomIds[i] = client.createRoom(adminToken, "load-" + run + "-" + i);
+            }
+            long start = System.nanoTime();
+            long end = start + warmup + duration;
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 1; i <= users; i++) {
+                String login = "load-" + run + "-" + i;
+                running.add(pool.submit(() -> {
+                    client.signUp(login, PASSWORD);
+                    String token = client.login(login, PASSWORD);
+                    int uid = client.personId(token);
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < end) {
+                        int room = roomIds[random.nextInt(rooms)];
+                        try {
+                            if (imports) {
+                                postBoth(client, stats, token, room, uid, login, batch);
+                            } else {
+                                client.post(token, room, uid, "message from " + login);
+                                client.read(token, room);
+                            }
+                        } catch (IOException e) {
+                            /* counted as an error, the user goes on */
+                        }
+                        Thread.sleep(thinkMs);
+                    }
+                    return null;
+                }));
+            }
+            TimeUnit.NANOSECONDS.sleep(warmup);
+            System.out.println("Warm-up, sign-ups and logins included:");
+            stats.print(System.out, warmup);
+            stats.reset();
+            for (Future<?> user : running) {
+                user.get();
+            }
+            System.out.printf("%n%d users, %d rooms, %d ms think time, %d s measured%s:%n",
+                    users, rooms, thinkMs, TimeUnit.NANOSECONDS.toSeconds(duration),
+                    imports ? ", " + batch + " messages a round" : "");
+            stats.print(System.out, System.nanoTime() - start - warmup);
+        } finally {
+            pool.shutdownNow();
+            if (app != null) {
+                app.close();
+            }
+        }
+    }
+
+    /* the same number of messages as single posts, then as one import */
+    private static void postBoth(ChatClient client, Stats stats, String token, int room, int uid,
+                                 String login, int batch) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < batch; i++) {
+            client.post(token, room, uid, "message from " + login);
+        }
+        stats.posted(ChatClient.POST, batch, System.nanoTime() - start);
+        List<String> texts = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++) {
+            texts.add("imported from " + login);
+        }
+        start = System.nanoTime();
+        client.importMessages(token, room, uid, texts);
+        stats.posted(ChatClient.IMPORT, batch, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.job4j.chat.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and errors per endpoint, and messages per second of the ways
+ * of posting them. Recording is safe from any thread, the histograms keep
+ * three significant digits up to one minute.
+ */
+public class Stats {
+    private static final long MAX_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<String, Recorder> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> totals = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder[]> posted = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, long nanos) {
+        latencies.computeIfAbsent(endpoint, e -> new Recorder(MAX_NANOS, 3))
+                .recordValue(Math.min(nanos, MAX_NANOS));
+    }
+
+    /**
+     * Counts messages posted one way and the time the poster spent on them.
+     */
+    public void posted(String way, int messages, long nanos) {
+        LongAdder[] sums = posted.computeIfAbsent(way, w -> new LongAdder[] {new LongAdder(), new LongAdder()});
+        sums[0].add(messages);
+        sums[1].add(nanos);
+    }
+
+    public void error(String endpoint) {
+        errors.computeIfAbsent(endpoint, e -> new LongAdder()).increment();
+    }
+
+    /**
+     * Drops what was recorded so far, used to leave the warm-up out of the report.
+     */
+    public void reset() {
+        latencies.values().forEach(Recorder::reset);
+        errors.clear();
+        totals.clear();
+        posted.clear();
+    }
+
+    /**
+     * Prints throughput and latency percentiles of each endpoint since the last reset.
+     */
+    public void print(PrintStream out, long elapsedNanos) {
+        latencies.forEach((endpoint, recorder) ->
+                totals.computeIfAbsent(endpoint, e -> new Histogram(MAX_NANOS, 3)).add(recorder.getIntervalHistogram()));
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%-8s %9s %9s %8s %8s %8s %8s %8s %8s%n",
+                "endpoint", "count", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        totals.keySet().stream().sorted().forEach(endpoint -> {
+            Histogram h = totals.get(endpoint);
+            LongAdder failed = errors.get(endpoint);
+            if (h.getTotalCount() == 0 && failed == null) {
+                return;
+            }
+            out.printf("%-8s %9d %9.1f %8d %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                    endpoint, h.getTotalCount(), h.getTotalCount() / seconds,
+                    failed != null ? failed.sum() : 0,
+                    millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(90)),
+                    millis(h.getValueAtPercentile(99)), millis(h.getValueAtPercentile(99.9)),
+                    millis(h.getMaxValue()));
+        });
+        if (!posted.isEmpty()) {
+            out.printf("%n%-8s %9s %14s%n", "posted", "messages", "msg/s per user");
+            posted.keySet().stream().sorted().forEach(way -> {
+                LongAdder[] sums = posted.get(way);
+                out.printf("%-8s %9d %14.1f%n", way, sums[0].sum(), sums[0].sum() / (sums[1].sum() / 1e9));
+            });
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,17 @@
+package ru.job4j.chat.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * The room and message API of the chat on WebFlux and R2DBC. It uses the
+ * same database and accepts the same tokens as the servlet application,
+ * so both can run side by side and be compared.
+ */
+@SpringBootApplication
+public class ReactiveChatApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(ReactiveChatApplication.class, args);
+    }
+}
@@ -0,0 +1,123 @@
+package ru.job4j.chat.reactive.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.reactive.repository.MessageRepository;
+import ru.job4j.chat.reactive.repository.PersonRepository;
+import ru.job4j.chat.reactive.repository.RoomRepository;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code /rooms} contract of the servlet RoomController: same paths,
+ * parameters, status codes, bodies and {@value #NEXT_CURSOR_HEADER} paging.
+ */
+@RestController
+@RequestMapping("/rooms")
+public class RoomController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 500;
+
+    private final RoomRepository rooms;
+    private final PersonRepository persons;
+    private final MessageRepository messages;
+
+    public RoomController(RoomRepository rooms, PersonRepository persons, MessageRepository messages) {
+        this.rooms = rooms;
+        this.persons = persons;
+        this.messages = messages;
+    }
+
+    @GetMapping("/")
+    public Flux<Room> findAll() {
+        return this.rooms.findAll();
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Room>> findById(@PathVariable int id) {
+        return this.rooms.findById(id)
+                .map(found -> new ResponseEntity<>(found, HttpStatus.OK))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+
+    @PostMapping("/")
+    public Mono<ResponseEntity<Room>> create(@RequestBody Room room) {
+        return this.rooms.save(room).map(saved -> new ResponseEntity<>(saved, HttpStatus.CREATED));
+    }
+
+    @PutMapping("/")
+    public Mono<ResponseEntity<Void>> update(@RequestBody Room room) {
+        return this.rooms.save(room).thenReturn(ResponseEntity.ok().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> delete(@PathVariable int id) {
+        return this.rooms.deleteById(id).thenReturn(ResponseEntity.ok().build());
+    }
+
+    @GetMapping("/{id}/messages")
+    public Mono<ResponseEntity<List<Message>>> getMessagesByRoom(@PathVariable int id,
+                                                                 @RequestParam(value = "before", required = false) Integer before,
+                                                                 @RequestParam(value = "after", required = false) Integer after,
+                                                                 @RequestParam(value = "limit", defaultValue = "" + DEFAULT_LIMIT) int limit) {
+        if (limit < 1 || (before != null && after != null)) {
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        int size = Math.min(limit, MAX_LIMIT);
+        Mono<List<Message>> page;
+        if (after != null) {
+            page = this.messages.findByRoomIdAndIdGreaterThanOrderByIdAsc(id, after, size).collectList();
+        } else if (before != null) {
+            page = reversed(this.messages.findByRoomIdAndIdLessThanOrderByIdDesc(id, before, size));
+        } else {
+            page = reversed(this.messages.findByRoomIdOrderByIdDesc(id, size));
+        }
+        return this.rooms.findById(id)
+                .flatMap(room -> page)
+                .map(result -> {
+                    HttpHeaders headers = new HttpHeaders();
+                    if (result.size() == size) {
+                        Message edge = after != null ? result.get(result.size() - 1) : result.get(0);
+                        headers.add(NEXT_CURSOR_HEADER, String.valueOf(edge.getId()));
+                    }
+                    return new ResponseEntity<>(result, headers, HttpStatus.OK);
+                })
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+    }
+
+    private static Mono<List<Message>> reversed(Flux<Message> messages) {
+        return messages.collectList().map(list -> {
+            Collections.reverse(list);
+            return list;
+        });
+    }
+
+    @PostMapping("/{id}/create")
+    public Mono<ResponseEntity<Message>> createMessage(@PathVariable int id,
+                                                       @RequestParam(value = "uid") int uid,
+                                                       @RequestParam(value = "text") String text) {
+        return this.persons.findById(uid)
+                .zipWith(this.rooms.findById(id), (person, room) -> {
+                    Message m = Message.of(0, text, person);
+                    m.setRoom(room);
+                    return m;
+                })
+                .flatMap(this.messages::save)
+                .map(saved -> new ResponseEntity<>(saved, HttpStatus.CREATED))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+    }
+
+    @DeleteMapping("/{id}/delete/{mid}")
+    public Mono<ResponseEntity<Void>> deleteMessage(@PathVariable int id,
+                                                    @PathVariable int mid) {
+        return this.messages.deleteById(mid).thenReturn(new ResponseEntity<>(HttpStatus.OK));
+    }
+}
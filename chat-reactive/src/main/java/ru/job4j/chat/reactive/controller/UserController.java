@@ -0,0 +1,53 @@
+package ru.job4j.chat.reactive.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.reactive.repository.PersonRepository;
+import ru.job4j.chat.reactive.security.JwtTokens;
+
+import static ru.job4j.chat.reactive.security.JwtTokens.LOGIN_URL;
+import static ru.job4j.chat.reactive.security.JwtTokens.SIGN_UP_URL;
+
+/**
+ * Sign-up and login. BCrypt would stall the event loop, it runs on the
+ * bounded elastic scheduler.
+ */
+@RestController
+public class UserController {
+    private final PersonRepository users;
+    private final PasswordEncoder encoder;
+    private final JwtTokens tokens;
+
+    public UserController(PersonRepository users, PasswordEncoder encoder, JwtTokens tokens) {
+        this.users = users;
+        this.encoder = encoder;
+        this.tokens = tokens;
+    }
+
+    @PostMapping(SIGN_UP_URL)
+    public Mono<Void> signUp(@RequestBody Person person) {
+        return Mono.fromCallable(() -> Person.of(0, person.getLogin(), encoder.encode(person.getPassword())))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(users::save);
+    }
+
+    /**
+     * Answers with the token in the {@code Authorization} header, like JWTAuthenticationFilter.
+     */
+    @PostMapping(LOGIN_URL)
+    public Mono<ResponseEntity<Void>> login(@RequestBody Person creds) {
+        return users.findPersonByLogin(creds.getLogin())
+                .filterWhen(found -> Mono.fromCallable(() -> encoder.matches(creds.getPassword(), found.getPassword()))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .map(found -> ResponseEntity.ok().header(HttpHeaders.AUTHORIZATION, tokens.create(found.getLogin())).<Void>build())
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+    }
+}
@@ -0,0 +1,102 @@
+package ru.job4j.chat.reactive.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.job4j.chat.model.Message;
+
+/**
+ * The same joined selects as the JPA repository of the chat, one statement per page.
+ */
+@Repository
+public class MessageRepository {
+    private static final String SELECT = "select m.id, m.text, m.time, " + Rows.PERSON
+            + ", o.id as room_id, o.name as room_name from message m "
+            + "left join person p on p.id = m.person_id " + Rows.PERSON_JOIN
+            + "left join room o on o.id = m.room_id ";
+
+    /* the allocationSize of Message */
+    static final int ID_BLOCK = 50;
+
+    private final DatabaseClient db;
+    private int nextId;
+    private int idLimit;
+
+    public MessageRepository(DatabaseClient db) {
+        this.db = db;
+    }
+
+    public Flux<Message> findByRoomIdOrderByIdDesc(int roomId, int limit) {
+        return db.sql(SELECT + "where m.room_id = :room order by m.id desc limit :limit")
+                .bind("room", roomId)
+                .bind("limit", limit)
+                .map((row, meta) -> Rows.message(row))
+                .all();
+    }
+
+    public Flux<Message> findByRoomIdAndIdLessThanOrderByIdDesc(int roomId, int before, int limit) {
+        return db.sql(SELECT + "where m.room_id = :room and m.id < :before order by m.id desc limit :limit")
+                .bind("room", roomId)
+                .bind("before", before)
+                .bind("limit", limit)
+                .map((row, meta) -> Rows.message(row))
+                .all();
+    }
+
+    public Flux<Message> findByRoomIdAndIdGreaterThanOrderByIdAsc(int roomId, int after, int limit) {
+        return db.sql(SELECT + "where m.room_id = :room and m.id > :after order by m.id limit :limit")
+                .bind("room", roomId)
+                .bind("after", after)
+                .bind("limit", limit)
+                .map((row, meta) -> Rows.message(row))
+                .all();
+    }
+
+    /**
+     * Inserts the message and sets its id. Ids are taken the way Hibernate's
+     * pooled optimizer takes them: a {@code nextval} is the high end of a
+     * block of {@value #ID_BLOCK} ids, handed out one by one, so they never
+     * collide with the blocks of the servlet application.
+     */
+    public Mono<Message> save(Message message) {
+        return nextId().flatMap(id -> db.sql("insert into message (id, text, time, person_id, room_id) "
+                + "values (:id, :text, :time, :person, :room)")
+                .bind("id", id)
+                .bind("text", message.getText())
+                .bind("time", message.getTime().toLocalDateTime())
+                .bind("person", message.getPerson().getId())
+                .bind("room", message.getRoom().getId())
+                .then()
+                .thenReturn(id))
+                .map(id -> {
+                    message.setId(id);
+                    return message;
+                });
+    }
+
+    public Mono<Void> deleteById(int id) {
+        return db.sql("delete from message where id = :id").bind("id", id).then();
+    }
+
+    /* a block fetched while another one was installed is dropped, that only skips ids */
+    private Mono<Integer> nextId() {
+        synchronized (this) {
+            if (nextId < idLimit) {
+                return Mono.just(nextId++);
+            }
+        }
+        return db.sql("select nextval('message_id_seq')")
+                .map((row, meta) -> row.get(0, Long.class))
+                .one()
+                .map(high -> {
+                    synchronized (this) {
+                        if (nextId >= idLimit) {
+                            nextId = (int) (high - ID_BLOCK + 1);
+                            idLimit = (int) (high + 1);
+                        }
+                        return nextId++;
+                    }
+                });
+    }
+}
@@ -0,0 +1,34 @@
+package ru.job4j.chat.reactive.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+import ru.job4j.chat.model.Person;
+
+@Repository
+public class PersonRepository {
+    private static final String SELECT = "select " + Rows.PERSON + " from person p " + Rows.PERSON_JOIN;
+
+    private final DatabaseClient db;
+
+    public PersonRepository(DatabaseClient db) {
+        this.db = db;
+    }
+
+    public Mono<Person> findById(int id) {
+        return db.sql(SELECT + "where p.id = :id").bind("id", id).map((row, meta) -> Rows.person(row)).one();
+    }
+
+    public Mono<Person> findPersonByLogin(String login) {
+        return db.sql(SELECT + "where p.login = :login").bind("login", login)
+                .map((row, meta) -> Rows.person(row)).first();
+    }
+
+    public Mono<Void> save(Person person) {
+        return db.sql("insert into person (login, password, role_id) values (:login, :password, :role)")
+                .bind("login", person.getLogin())
+                .bind("password", person.getPassword())
+                .bind("role", person.getRole().getId())
+                .then();
+    }
+}
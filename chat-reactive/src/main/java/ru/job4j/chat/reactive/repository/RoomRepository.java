@@ -0,0 +1,51 @@
+package ru.job4j.chat.reactive.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.job4j.chat.model.Room;
+
+@Repository
+public class RoomRepository {
+    private static final String SELECT = "select id as room_id, name as room_name from room ";
+
+    private final DatabaseClient db;
+
+    public RoomRepository(DatabaseClient db) {
+        this.db = db;
+    }
+
+    public Flux<Room> findAll() {
+        return db.sql(SELECT + "order by id").map((row, meta) -> Rows.room(row)).all();
+    }
+
+    public Mono<Room> findById(int id) {
+        return db.sql(SELECT + "where id = :id").bind("id", id).map((row, meta) -> Rows.room(row)).one();
+    }
+
+    /**
+     * Inserts a room without an id, updates the others.
+     */
+    public Mono<Room> save(Room room) {
+        if (room.getId() != 0) {
+            return db.sql("update room set name = :name where id = :id")
+                    .bind("id", room.getId())
+                    .bind("name", room.getName())
+                    .then()
+                    .thenReturn(room);
+        }
+        return db.sql("insert into room (name) values (:name) returning id")
+                .bind("name", room.getName())
+                .map((row, meta) -> row.get("id", Integer.class))
+                .one()
+                .map(id -> {
+                    room.setId(id);
+                    return room;
+                });
+    }
+
+    public Mono<Void> deleteById(int id) {
+        return db.sql("delete from room where id = :id").bind("id", id).then();
+    }
+}
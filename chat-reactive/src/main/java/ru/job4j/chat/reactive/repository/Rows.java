@@ -0,0 +1,50 @@
+package ru.job4j.chat.reactive.repository;
+
+import io.r2dbc.spi.Row;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Builds the model objects from the columns of the joined selects.
+ */
+final class Rows {
+    static final String PERSON = "p.id as person_id, p.login, p.password, r.id as role_id, r.name as role_name";
+    static final String PERSON_JOIN = "left join role r on r.id = p.role_id ";
+
+    private Rows() {
+    }
+
+    static Room room(Row row) {
+        Integer id = row.get("room_id", Integer.class);
+        if (id == null) {
+            return null;
+        }
+        Room room = Room.of(row.get("room_name", String.class));
+        room.setId(id);
+        return room;
+    }
+
+    static Person person(Row row) {
+        Integer id = row.get("person_id", Integer.class);
+        if (id == null) {
+            return null;
+        }
+        Person person = Person.of(id, row.get("login", String.class), row.get("password", String.class));
+        Integer roleId = row.get("role_id", Integer.class);
+        person.setRole(roleId != null ? Role.of(roleId, row.get("role_name", String.class)) : null);
+        return person;
+    }
+
+    static Message message(Row row) {
+        Message m = Message.of(row.get("id", Integer.class), row.get("text", String.class), person(row));
+        LocalDateTime time = row.get("time", LocalDateTime.class);
+        m.setTime(time != null ? Timestamp.valueOf(time) : null);
+        m.setRoom(room(row));
+        return m;
+    }
+}
@@ -0,0 +1,74 @@
+package ru.job4j.chat.reactive.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import ru.job4j.chat.filter.JWTAuthenticationFilter;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Issues and checks the tokens exactly like JWTAuthenticationFilter and
+ * JWTAuthorizationFilter of the servlet application, so a token from one
+ * is accepted by the other. The secret, expiry, prefix and sign-up path are
+ * the filter's own constants; only compile-time constants are used, they
+ * are inlined and the filter class, which needs the servlet API, is never
+ * loaded.
+ */
+@Component
+public class JwtTokens implements ReactiveAuthenticationManager {
+    public static final String SECRET = JWTAuthenticationFilter.SECRET;
+    public static final long EXPIRATION_TIME = JWTAuthenticationFilter.EXPIRATION_TIME;
+    public static final String TOKEN_PREFIX = JWTAuthenticationFilter.TOKEN_PREFIX;
+    public static final String SIGN_UP_URL = JWTAuthenticationFilter.SIGN_UP_URL;
+    public static final String LOGIN_URL = "/login";
+
+    private static final Algorithm ALGORITHM = Algorithm.HMAC512(SECRET.getBytes());
+    private static final JWTVerifier VERIFIER = JWT.require(ALGORITHM).build();
+
+    public String create(String login) {
+        return TOKEN_PREFIX + JWT.create()
+                .withSubject(login)
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(ALGORITHM);
+    }
+
+    /**
+     * Takes the not yet verified token from the {@code Authorization} header.
+     */
+    public Mono<Authentication> convert(ServerWebExchange exchange) {
+        String header = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        return header != null && header.startsWith(TOKEN_PREFIX)
+                ? Mono.just(new UsernamePasswordAuthenticationToken(null, header.substring(TOKEN_PREFIX.length())))
+                : Mono.empty();
+    }
+
+    /**
+     * Verifies the token, an HMAC check cheap enough for the event loop.
+     */
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        return Mono.fromCallable(() -> {
+            String user;
+            try {
+                user = VERIFIER.verify((String) authentication.getCredentials()).getSubject();
+            } catch (JWTVerificationException e) {
+                throw new BadCredentialsException("Invalid token", e);
+            }
+            if (user == null) {
+                throw new BadCredentialsException("Token without subject");
+            }
+            return new UsernamePasswordAuthenticationToken(user, null, List.of());
+        });
+    }
+}
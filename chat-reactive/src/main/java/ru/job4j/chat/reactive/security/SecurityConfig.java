@@ -0,0 +1,51 @@
+package ru.job4j.chat.reactive.security;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
+import org.springframework.security.web.server.authentication.HttpStatusServerEntryPoint;
+import org.springframework.security.web.server.authentication.ServerAuthenticationEntryPointFailureHandler;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+
+import static ru.job4j.chat.reactive.security.JwtTokens.LOGIN_URL;
+import static ru.job4j.chat.reactive.security.JwtTokens.SIGN_UP_URL;
+
+@Configuration
+@EnableWebFluxSecurity
+public class SecurityConfig {
+
+    @Bean
+    public SecurityWebFilterChain filterChain(ServerHttpSecurity http, JwtTokens tokens) {
+        /* as in the servlet application: no session, 403 without a valid token */
+        HttpStatusServerEntryPoint forbidden = new HttpStatusServerEntryPoint(HttpStatus.FORBIDDEN);
+        AuthenticationWebFilter bearer = new AuthenticationWebFilter(tokens);
+        bearer.setServerAuthenticationConverter(tokens::convert);
+        bearer.setAuthenticationFailureHandler(new ServerAuthenticationEntryPointFailureHandler(forbidden));
+        return http.csrf().disable()
+                .httpBasic().disable()
+                .formLogin().disable()
+                .logout().disable()
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .exceptionHandling().authenticationEntryPoint(forbidden)
+                .and()
+                .authorizeExchange()
+                .pathMatchers(HttpMethod.POST, SIGN_UP_URL, LOGIN_URL).permitAll()
+                .anyExchange().authenticated()
+                .and()
+                .addFilterAt(bearer, SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+
+    @Bean
+    public PasswordEncoder passwordEncoder() {
+        return new BCryptPasswordEncoder();
+    }
+}
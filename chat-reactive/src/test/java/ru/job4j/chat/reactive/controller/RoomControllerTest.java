@@ -0,0 +1,126 @@
+package ru.job4j.chat.reactive.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.reactive.repository.MessageRepository;
+import ru.job4j.chat.reactive.repository.PersonRepository;
+import ru.job4j.chat.reactive.repository.RoomRepository;
+import ru.job4j.chat.reactive.security.JwtTokens;
+import ru.job4j.chat.reactive.security.SecurityConfig;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@WebFluxTest(RoomController.class)
+@Import({SecurityConfig.class, JwtTokens.class})
+class RoomControllerTest {
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private JwtTokens tokens;
+
+    @MockBean
+    private RoomRepository rooms;
+
+    @MockBean
+    private PersonRepository persons;
+
+    @MockBean
+    private MessageRepository messages;
+
+    private static Room room(int id) {
+        Room room = Room.of("Room" + id);
+        room.setId(id);
+        return room;
+    }
+
+    @Test
+    public void whenNoTokenThenForbidden() {
+        client.get().uri("/rooms/").exchange().expectStatus().isForbidden();
+    }
+
+    @Test
+    public void whenBadTokenThenForbidden() {
+        client.get().uri("/rooms/")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer garbage")
+                .exchange().expectStatus().isForbidden();
+    }
+
+    @Test
+    public void whenFindAll() {
+        when(rooms.findAll()).thenReturn(Flux.just(room(1), room(2)));
+        client.get().uri("/rooms/")
+                .header(HttpHeaders.AUTHORIZATION, tokens.create("user"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].name").isEqualTo("Room2");
+    }
+
+    @Test
+    public void whenFullPageThenAscendingWithCursor() {
+        when(rooms.findById(1)).thenReturn(Mono.just(room(1)));
+        Person author = Person.of(1, "user", "password");
+        when(messages.findByRoomIdOrderByIdDesc(1, 2))
+                .thenReturn(Flux.just(Message.of(20, "second", author), Message.of(10, "first", author)));
+        client.get().uri("/rooms/1/messages?limit=2")
+                .header(HttpHeaders.AUTHORIZATION, tokens.create("user"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(RoomController.NEXT_CURSOR_HEADER, "10")
+                .expectBody()
+                .jsonPath("$[0].id").isEqualTo(10)
+                .jsonPath("$[1].person.login").isEqualTo("user");
+    }
+
+    @Test
+    public void whenMessagesOfMissingRoomThenBadRequest() {
+        when(rooms.findById(5)).thenReturn(Mono.empty());
+        when(messages.findByRoomIdOrderByIdDesc(5, 100)).thenReturn(Flux.empty());
+        client.get().uri("/rooms/5/messages")
+                .header(HttpHeaders.AUTHORIZATION, tokens.create("user"))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void whenCreateMessageThenCreated() {
+        when(rooms.findById(1)).thenReturn(Mono.just(room(1)));
+        when(persons.findById(3)).thenReturn(Mono.just(Person.of(3, "user", "password")));
+        when(messages.save(any(Message.class))).thenAnswer(inv -> {
+            Message m = inv.getArgument(0);
+            m.setId(7);
+            return Mono.just(m);
+        });
+        client.post().uri("/rooms/1/create?uid=3&text=hello")
+                .header(HttpHeaders.AUTHORIZATION, tokens.create("user"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(7)
+                .jsonPath("$.room.id").isEqualTo(1);
+    }
+
+    @Test
+    public void whenCreateMessageByUnknownPersonThenBadRequest() {
+        when(rooms.findById(1)).thenReturn(Mono.just(room(1)));
+        when(persons.findById(3)).thenReturn(Mono.empty());
+        client.post().uri("/rooms/1/create?uid=3&text=hello")
+                .header(HttpHeaders.AUTHORIZATION, tokens.create("user"))
+                .exchange()
+                .expectStatus().isBadRequest();
+        verify(messages, never()).save(any());
+    }
+}
@@ -1,12 +1,20 @@
 package ru.job4j.chat;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.client.RestTemplate;
+import ru.job4j.chat.service.PooledPasswordEncoder;
 
 @SpringBootApplication
+@EnableCaching
 public class ChatApplication {
 
     public static void main(String[] args) {
@@ -19,8 +27,17 @@ public class ChatApplication {
     }
 
     @Bean
-    public BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${chat.hashing.threads:2}") int threads,
+                                           @Value("${chat.hashing.queue:64}") int queue,
+                                           @Value("${chat.hashing.timeout-ms:5000}") long timeout) {
+        return new PooledPasswordEncoder(new BCryptPasswordEncoder(), threads, queue, timeout);
+    }
+
+    /* logins are cached only briefly, a rename shows up within the TTL */
+    @Bean
+    public CacheManagerCustomizer<CaffeineCacheManager> loginCache(
+            @Value("${chat.cache.logins.spec:maximumSize=10000,expireAfterWrite=30s,recordStats}") String spec) {
+        return manager -> manager.registerCustomCache("logins", Caffeine.from(spec).build());
     }
 
 }
@@ -0,0 +1,110 @@
+package ru.job4j.chat;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import ru.job4j.chat.repository.MessageShards;
+import ru.job4j.chat.service.ReadYourWrites;
+import ru.job4j.chat.service.SlowQueryLog;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class DataSourceConfig {
+
+    /* every repository statement goes through the proxy and is timed by the slow query log */
+    @Bean
+    public static BeanPostProcessor slowQueryDataSource(ObjectProvider<SlowQueryLog> log) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                SlowQueryLog slow = bean instanceof DataSource ? log.getIfAvailable() : null;
+                return slow != null ? slow.wrap((DataSource) bean, beanName) : bean;
+            }
+        };
+    }
+
+    /**
+     * With {@code chat.datasource.replicas} set, a primary pool and one pool
+     * per replica URL, all configured by {@code spring.datasource.hikari.*},
+     * behind a routing data source. Without it Boot's single pool is used.
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "chat.datasource.replicas")
+    public DataSource dataSource(DataSourceProperties properties, Environment env, ReadYourWrites writes,
+                                 @Value("${chat.datasource.replicas}") List<String> urls) {
+        HikariDataSource primary = pool(properties, env, properties.determineUrl(), "primary");
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            if (!url.isBlank()) {
+                replicas.add(pool(properties, env, url.trim(), "replica-" + (replicas.size() + 1)));
+            }
+        }
+        return new RoutingProxy(new ReplicaRoutingDataSource(primary, replicas, writes));
+    }
+
+    /**
+     * With {@code chat.shards.urls} set, one pool per shard for the messages,
+     * with the credentials and pool settings of the main database. The pools
+     * are no beans, they are handed to the slow query log here.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "chat.shards.urls")
+    public MessageShards messageShards(DataSourceProperties properties, Environment env, JdbcTemplate jdbc,
+                                       ObjectProvider<SlowQueryLog> log,
+                                       @Value("${chat.shards.urls}") List<String> urls,
+                                       @Value("${chat.shards.vnodes:128}") int vnodes,
+                                       @Value("${chat.shards.refresh-ms:5000}") long refreshMillis) {
+        SlowQueryLog slow = log.getIfAvailable();
+        List<DataSource> pools = new ArrayList<>();
+        for (String url : urls) {
+            if (!url.isBlank()) {
+                String name = "shard-" + pools.size();
+                DataSource pool = pool(properties, env, url.trim(), name);
+                pools.add(slow != null ? slow.wrap(pool, name) : pool);
+            }
+        }
+        return new MessageShards(pools, jdbc, vnodes, refreshMillis);
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, Environment env, String url, String name) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        Binder.get(env).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(Metrics.globalRegistry));
+        return pool;
+    }
+
+    /* opens the routed connection at the first statement, and closes the pools with the context */
+    private static final class RoutingProxy extends LazyConnectionDataSourceProxy implements Closeable {
+        private RoutingProxy(ReplicaRoutingDataSource routing) {
+            super(routing);
+        }
+
+        @Override
+        public void close() throws IOException {
+            ((Closeable) obtainTargetDataSource()).close();
+        }
+    }
+}
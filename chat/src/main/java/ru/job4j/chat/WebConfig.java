@@ -0,0 +1,30 @@
+package ru.job4j.chat;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.job4j.chat.filter.AdminInterceptor;
+import ru.job4j.chat.filter.RateLimitInterceptor;
+import ru.job4j.chat.filter.ReadYourWritesInterceptor;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+    private final RateLimitInterceptor rateLimit;
+    private final ReadYourWritesInterceptor readYourWrites;
+    private final AdminInterceptor admin;
+
+    public WebConfig(RateLimitInterceptor rateLimit, ReadYourWritesInterceptor readYourWrites,
+                     AdminInterceptor admin) {
+        this.rateLimit = rateLimit;
+        this.readYourWrites = readYourWrites;
+        this.admin = admin;
+    }
+
+    /* only the endpoints that write a message are limited, the batch import charges per message */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(rateLimit).addPathPatterns("/rooms/*/create", "/messages/");
+        registry.addInterceptor(readYourWrites);
+        registry.addInterceptor(admin).addPathPatterns("/admin/**", "/shards/**");
+    }
+}
@@ -0,0 +1,58 @@
+package ru.job4j.chat;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import ru.job4j.chat.filter.JWTChannelInterceptor;
+import ru.job4j.chat.filter.TokenVerifier;
+
+import static ru.job4j.chat.service.RoomMessagePublisher.TOPIC_PREFIX;
+
+@Configuration
+@EnableWebSocketMessageBroker
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    public static final String WS_URL = "/ws";
+
+    /* number of room destinations whose subscriber lists are kept resolved */
+    private static final int DESTINATION_CACHE_LIMIT = 4096;
+
+    private final TokenVerifier tokens;
+    private final int sendTimeLimit;
+    private final int sendBufferLimit;
+
+    public WebSocketConfig(TokenVerifier tokens,
+                           @Value("${chat.ws.send-time-limit-ms:10000}") int sendTimeLimit,
+                           @Value("${chat.ws.send-buffer-limit:524288}") int sendBufferLimit) {
+        this.tokens = tokens;
+        this.sendTimeLimit = sendTimeLimit;
+        this.sendBufferLimit = sendBufferLimit;
+    }
+
+    @Override
+    public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.addEndpoint(WS_URL).setAllowedOriginPatterns("*");
+    }
+
+    @Override
+    public void configureMessageBroker(MessageBrokerRegistry registry) {
+        registry.enableSimpleBroker(TOPIC_PREFIX);
+        registry.setCacheLimit(DESTINATION_CACHE_LIMIT);
+    }
+
+    /* a session that cannot take its frames in time, or lets too many bytes pile up, is closed */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimit)
+                .setSendBufferSizeLimit(sendBufferLimit);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new JWTChannelInterceptor(tokens));
+    }
+}
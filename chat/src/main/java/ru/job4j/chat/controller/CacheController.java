@@ -0,0 +1,42 @@
+package ru.job4j.chat.controller;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/caches")
+public class CacheController {
+    private final CacheManager caches;
+
+    public CacheController(final CacheManager caches) {
+        this.caches = caches;
+    }
+
+    @GetMapping("/")
+    public Map<String, Map<String, Number>> stats() {
+        Map<String, Map<String, Number>> result = new LinkedHashMap<>();
+        for (String name : this.caches.getCacheNames()) {
+            Cache cache = this.caches.getCache(name);
+            if (cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache) {
+                com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache =
+                        (com.github.benmanes.caffeine.cache.Cache<?, ?>) cache.getNativeCache();
+                CacheStats stats = nativeCache.stats();
+                Map<String, Number> values = new LinkedHashMap<>();
+                values.put("size", nativeCache.estimatedSize());
+                values.put("hits", stats.hitCount());
+                values.put("misses", stats.missCount());
+                values.put("hitRatio", stats.hitRate());
+                values.put("evictions", stats.evictionCount());
+                result.put(name, values);
+            }
+        }
+        return result;
+    }
+}
@@ -1,10 +1,14 @@
 package ru.job4j.chat.controller;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.job4j.chat.model.Message;
 import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.service.MessageCreatedEvent;
+import ru.job4j.chat.service.MessageDeletedEvent;
+import ru.job4j.chat.service.MessageUpdatedEvent;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -14,9 +18,11 @@ import java.util.stream.StreamSupport;
 @RequestMapping("/messages")
 public class MessageController {
     private final MessageRepository messages;
+    private final ApplicationEventPublisher events;
 
-    public MessageController(final MessageRepository messages) {
+    public MessageController(final MessageRepository messages, final ApplicationEventPublisher events) {
         this.messages = messages;
+        this.events = events;
     }
 
     @GetMapping("/")
@@ -34,22 +40,34 @@ public class MessageController {
 
     @PostMapping("/")
     public ResponseEntity<Message> create(@RequestBody Message message) {
-        return message != null
-                ? new ResponseEntity<>(this.messages.save(message), HttpStatus.CREATED)
-                : new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        if (message == null) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Message saved = this.messages.save(message);
+        if (saved.getRoom() != null) {
+            this.events.publishEvent(new MessageCreatedEvent(saved));
+        }
+        return new ResponseEntity<>(saved, HttpStatus.CREATED);
     }
 
     @PutMapping("/")
     public ResponseEntity<Void> update(@RequestBody Message message) {
-        this.messages.save(message);
+        this.events.publishEvent(new MessageUpdatedEvent(this.messages.save(message)));
         return ResponseEntity.ok().build();
     }
 
+    /* the message is read first, the listeners need its room and author */
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> delete(@PathVariable int id) {
-        Message m = new Message();
-        m.setId(id);
+        Message m = this.messages.findById(id).orElseGet(() -> {
+            Message missing = new Message();
+            missing.setId(id);
+            return missing;
+        });
         this.messages.delete(m);
+        this.events.publishEvent(new MessageDeletedEvent(
+                m.getRoom() != null ? m.getRoom().getId() : null, id,
+                m.getPerson() != null ? m.getPerson().getId() : null));
         return ResponseEntity.ok().build();
     }
 }
@@ -0,0 +1,24 @@
+package ru.job4j.chat.controller;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.job4j.chat.service.SlowQueryLog;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin/queries")
+public class QueryController {
+    private final SlowQueryLog log;
+
+    public QueryController(final SlowQueryLog log) {
+        this.log = log;
+    }
+
+    @GetMapping("/")
+    public List<SlowQueryLog.Shape> top(@RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return this.log.top(Math.max(0, limit));
+    }
+}
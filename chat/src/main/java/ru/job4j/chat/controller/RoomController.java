@@ -1,33 +1,104 @@
 package ru.job4j.chat.controller;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.job4j.chat.filter.RateLimitInterceptor;
 import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
 import ru.job4j.chat.model.Room;
 import ru.job4j.chat.repository.MessageRepository;
 import ru.job4j.chat.repository.PersonRepository;
 import ru.job4j.chat.repository.RoomRepository;
+import ru.job4j.chat.service.CommitTimeoutException;
+import ru.job4j.chat.service.MessageBatchService;
+import ru.job4j.chat.service.MessageCreatedEvent;
+import ru.job4j.chat.service.MessageDeletedEvent;
+import ru.job4j.chat.service.MessageExportService;
+import ru.job4j.chat.service.MessageWriteQueue;
+import ru.job4j.chat.service.PresenceRegistry;
+import ru.job4j.chat.service.RecentMessages;
+import ru.job4j.chat.service.RoomReadEvent;
+import ru.job4j.chat.service.RoomStreamService;
+import ru.job4j.chat.service.UnreadCounters;
 
+import java.security.Principal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/rooms")
 public class RoomController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 500;
+    private static final int EXPORT_BUFFER = 64 * 1024;
+
     @Autowired
     private final RoomRepository rooms;
     @Autowired
     private final PersonRepository persons;
     @Autowired
     private final MessageRepository messages;
+    @Autowired
+    private final ApplicationEventPublisher events;
+    @Autowired
+    private final RoomStreamService streams;
+    @Autowired
+    private final MessageBatchService batches;
+    @Autowired
+    private final MessageWriteQueue writes;
+    @Autowired
+    private final RecentMessages recent;
+    @Autowired
+    private final MessageExportService exports;
+    @Autowired
+    private final UnreadCounters unread;
+    @Autowired
+    private final PresenceRegistry presence;
+    @Autowired
+    private final RateLimitInterceptor rateLimit;
+    private final int maxBatch;
 
-    public RoomController(final RoomRepository rooms, final PersonRepository persons, MessageRepository messages) {
+    public RoomController(final RoomRepository rooms, final PersonRepository persons, MessageRepository messages,
+                          ApplicationEventPublisher events, RoomStreamService streams, MessageBatchService batches,
+                          MessageWriteQueue writes, RecentMessages recent, MessageExportService exports,
+                          UnreadCounters unread, PresenceRegistry presence, RateLimitInterceptor rateLimit,
+                          @Value("${chat.batch.max-messages:10000}") int maxBatch) {
         this.rooms = rooms;
         this.persons = persons;
         this.messages = messages;
+        this.events = events;
+        this.streams = streams;
+        this.batches = batches;
+        this.writes = writes;
+        this.recent = recent;
+        this.exports = exports;
+        this.unread = unread;
+        this.presence = presence;
+        this.rateLimit = rateLimit;
+        this.maxBatch = maxBatch;
     }
 
     @GetMapping("/")
@@ -36,11 +107,69 @@ public class RoomController {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Unread counts of the rooms the caller follows, by room id.
+     */
+    @GetMapping("/unread")
+    public ResponseEntity<Map<Integer, Long>> unread(Principal principal) {
+        Person person = this.persons.findPersonByLogin(principal.getName());
+        return person != null
+                ? new ResponseEntity<>(this.unread.unread(person.getId()), HttpStatus.OK)
+                : new ResponseEntity<>(HttpStatus.FORBIDDEN);
+    }
+
+    /**
+     * Marks the room read by the caller up to the message {@code upTo}
+     * and returns the unread count left.
+     */
+    @PostMapping("/{id}/read")
+    public ResponseEntity<Long> markRead(@PathVariable int id,
+                                         @RequestParam(value = "upTo") int upTo,
+                                         Principal principal) {
+        Person person = this.persons.findPersonByLogin(principal.getName());
+        if (person == null) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        if (upTo < 0 || this.rooms.findById(id).isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        long left = this.unread.markRead(person.getId(), id, upTo);
+        this.events.publishEvent(new RoomReadEvent(person.getId(), id, upTo));
+        return new ResponseEntity<>(left, HttpStatus.OK);
+    }
+
+    /**
+     * Logins of the persons online in the room, answered from memory.
+     */
+    @GetMapping("/{id}/presence")
+    public List<String> presence(@PathVariable int id) {
+        return this.presence.online(id);
+    }
+
+    /**
+     * Heartbeat of the caller, who stays online in the room for the
+     * presence TTL. Clients send it a few times per TTL.
+     */
+    @PostMapping("/{id}/presence")
+    public ResponseEntity<Void> heartbeat(@PathVariable int id, Principal principal) {
+        if (this.rooms.findById(id).isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        this.presence.heartbeat(id, principal.getName());
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @DeleteMapping("/{id}/presence")
+    public ResponseEntity<Void> leave(@PathVariable int id, Principal principal) {
+        this.presence.leave(id, principal.getName());
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Room> findById(@PathVariable int id) {
-        return this.rooms.existsById(id)
-                ? new ResponseEntity<>(this.rooms.findById(id).get(), HttpStatus.OK)
-                : new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        return this.rooms.findById(id)
+                .map(found -> new ResponseEntity<>(found, HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
     @PostMapping("/")
@@ -64,33 +193,199 @@ public class RoomController {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Returns one page of the room history in ascending id order.
+     * Without a cursor the latest messages are returned, {@code before} scrolls
+     * back through older messages and {@code after} fetches newer ones.
+     * When the page is full the cursor for the next page is sent in the
+     * {@value #NEXT_CURSOR_HEADER} header.
+     */
     @GetMapping("/{id}/messages")
-    public ResponseEntity<List<Message>> getMessagesByRoom(@PathVariable int id) {
-        return this.rooms.existsById(id)
-                ? new ResponseEntity<>(this.messages.getByRoomId(id), HttpStatus.OK)
-                : new ResponseEntity<>((HttpStatus.BAD_REQUEST));
+    public ResponseEntity<List<Message>> getMessagesByRoom(@PathVariable int id,
+                                                           @RequestParam(value = "before", required = false) Integer before,
+                                                           @RequestParam(value = "after", required = false) Integer after,
+                                                           @RequestParam(value = "limit", defaultValue = "" + DEFAULT_LIMIT) int limit) {
+        if (this.rooms.findById(id).isEmpty() || limit < 1 || (before != null && after != null)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Pageable page = PageRequest.of(0, Math.min(limit, MAX_LIMIT));
+        List<Message> result;
+        if (after != null) {
+            result = this.messages.findByRoomIdAndIdGreaterThanOrderByIdAsc(id, after, page);
+        } else if (before != null) {
+            result = reversed(this.messages.findByRoomIdAndIdLessThanOrderByIdDesc(id, before, page));
+        } else {
+            result = this.recent.latest(id, page.getPageSize())
+                    .orElseGet(() -> reversed(this.messages.findByRoomIdOrderByIdDesc(id, page)));
+        }
+        HttpHeaders headers = new HttpHeaders();
+        if (result.size() == page.getPageSize()) {
+            Message edge = after != null ? result.get(result.size() - 1) : result.get(0);
+            headers.add(NEXT_CURSOR_HEADER, String.valueOf(edge.getId()));
+        }
+        return new ResponseEntity<>(result, headers, HttpStatus.OK);
     }
 
+    /**
+     * Returns the messages of the room posted from {@code from} up to
+     * {@code to}, in ascending id order and paged with {@code after} like
+     * the history. Only the monthly partitions of the range are read.
+     */
+    @GetMapping(value = "/{id}/messages", params = {"from", "to"})
+    public ResponseEntity<List<Message>> getMessagesByTime(@PathVariable int id,
+                                                           @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                                                   LocalDateTime from,
+                                                           @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                                                   LocalDateTime to,
+                                                           @RequestParam(value = "after", defaultValue = "0") int after,
+                                                           @RequestParam(value = "limit", defaultValue = "" + DEFAULT_LIMIT) int limit) {
+        if (this.rooms.findById(id).isEmpty() || limit < 1 || !from.isBefore(to)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        Pageable page = PageRequest.of(0, Math.min(limit, MAX_LIMIT));
+        List<Message> result = this.messages.findByRoomIdAndTimeRange(
+                id, Timestamp.valueOf(from), Timestamp.valueOf(to), after, page);
+        HttpHeaders headers = new HttpHeaders();
+        if (result.size() == page.getPageSize()) {
+            headers.add(NEXT_CURSOR_HEADER, String.valueOf(result.get(result.size() - 1).getId()));
+        }
+        return new ResponseEntity<>(result, headers, HttpStatus.OK);
+    }
+
+    /* a time range needs both ends, a lone one is not taken for the history */
+    @GetMapping(value = "/{id}/messages", params = {"from", "!to"})
+    public ResponseEntity<List<Message>> getMessagesFrom(@PathVariable int id) {
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
+    @GetMapping(value = "/{id}/messages", params = {"!from", "to"})
+    public ResponseEntity<List<Message>> getMessagesTo(@PathVariable int id) {
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
+    private static List<Message> reversed(List<Message> messages) {
+        List<Message> result = new ArrayList<>(messages);
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Streams new messages of the room as Server-Sent Events. A reconnecting
+     * client gets the messages saved after its {@code Last-Event-ID} first.
+     */
+    @GetMapping(value = "/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@PathVariable int id,
+                                             @RequestHeader(value = "Last-Event-ID", required = false) Integer lastEventId) {
+        return this.rooms.findById(id).isPresent()
+                ? new ResponseEntity<>(this.streams.subscribe(id, lastEventId), HttpStatus.OK)
+                : new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * Downloads the whole room history as one JSON array, streamed from the
+     * database. The body is gzipped when the client accepts it.
+     */
+    @GetMapping(value = "/{id}/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable int id,
+                                                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                                                String acceptEncoding) {
+        if (this.rooms.findById(id).isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentDisposition(ContentDisposition.attachment().filename("room-" + id + ".json").build());
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                try (GZIPOutputStream zipped = new GZIPOutputStream(out, EXPORT_BUFFER)) {
+                    this.exports.export(id, zipped);
+                }
+            } else {
+                this.exports.export(id, out);
+            }
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Posts a message to the room. Answers 503 when the write queue is full
+     * and 504 when the commit took too long: the message may then still be
+     * saved, a client should look for it before posting it again.
+     */
+    @Timed(value = "chat.messages.create", description = "Posting a message to a room", histogram = true)
     @PostMapping("/{id}/create")
     public ResponseEntity<Message> createMessage(@PathVariable int id,
                                                  @RequestParam(value = "uid") int uid,
                                                  @RequestParam(value = "text") String text) {
-        if (this.persons.existsById(uid)) {
-            if (this.rooms.existsById(id)) {
-                Message newMsg = Message.of(0, text, this.persons.findById(uid).get());
-                newMsg.setRoom(this.rooms.findById(id).get());
-                return new ResponseEntity<>(this.messages.save(newMsg), HttpStatus.CREATED);
+        Optional<Person> person = this.persons.findById(uid);
+        if (person.isPresent()) {
+            Optional<Room> room = this.rooms.findById(id);
+            if (room.isPresent()) {
+                Message newMsg = Message.of(0, text, person.get());
+                newMsg.setRoom(room.get());
+                Message saved;
+                try {
+                    saved = this.writes.save(newMsg);
+                } catch (RejectedExecutionException e) {
+                    return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+                } catch (CommitTimeoutException e) {
+                    return new ResponseEntity<>(HttpStatus.GATEWAY_TIMEOUT);
+                }
+                this.events.publishEvent(new MessageCreatedEvent(saved));
+                return new ResponseEntity<>(saved, HttpStatus.CREATED);
             }
         }
         return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
     }
 
+    /**
+     * Bulk import for bridges. The messages are saved in JDBC batches and
+     * their ids are returned. Once committed they are read back in one query
+     * and published one by one like single posts, so the latest page, the
+     * unread counts, live subscribers and the other nodes see them. Every
+     * message takes a token of the caller's rate limit.
+     */
+    @PostMapping("/{id}/messages/batch")
+    public ResponseEntity<List<Integer>> createMessages(@PathVariable int id,
+                                                        @RequestBody List<Message> batch,
+                                                        Principal principal) {
+        if (batch.isEmpty() || batch.size() > this.maxBatch || this.rooms.findById(id).isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        long wait = principal != null ? this.rateLimit.acquire(principal, batch.size()) : 0;
+        if (wait > 0) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, RateLimitInterceptor.retryAfter(wait));
+            return new ResponseEntity<>(headers, HttpStatus.TOO_MANY_REQUESTS);
+        }
+        List<Integer> ids;
+        try {
+            ids = this.batches.saveAll(id, batch);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        this.messages.findByIdIn(ids).forEach(m -> this.events.publishEvent(new MessageCreatedEvent(m)));
+        return new ResponseEntity<>(ids, HttpStatus.CREATED);
+    }
+
+    /* the author is read first, their own message never counted as unread to them */
     @DeleteMapping("/{id}/delete/{mid}")
     public ResponseEntity<Void> deleteMessage(@PathVariable int id,
                                               @PathVariable int mid) {
+        Integer author = this.messages.findById(mid)
+                .map(m -> m.getPerson() != null ? m.getPerson().getId() : null)
+                .orElse(null);
         Message msg = new Message();
         msg.setId(mid);
+        Room room = new Room();
+        room.setId(id);
+        msg.setRoom(room);
         this.messages.delete(msg);
+        this.events.publishEvent(new MessageDeletedEvent(id, mid, author));
         return new ResponseEntity<>(HttpStatus.OK);
     }
 }
@@ -0,0 +1,63 @@
+package ru.job4j.chat.controller;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.job4j.chat.repository.MessageShards;
+import ru.job4j.chat.repository.RoomRepository;
+import ru.job4j.chat.service.ShardRebalancer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/shards")
+@ConditionalOnProperty(name = "chat.shards.urls")
+public class ShardController {
+    private final MessageShards shards;
+    private final ShardRebalancer rebalancer;
+    private final RoomRepository rooms;
+
+    public ShardController(final MessageShards shards, final ShardRebalancer rebalancer, final RoomRepository rooms) {
+        this.shards = shards;
+        this.rebalancer = rebalancer;
+        this.rooms = rooms;
+    }
+
+    @GetMapping("/rooms/{id}")
+    public Map<String, Integer> shardOf(@PathVariable int id) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        result.put("roomId", id);
+        result.put("shard", this.shards.shardOf(id));
+        return result;
+    }
+
+    /**
+     * Starts moving the room to the shard and answers 202 at once, the
+     * move is logged when done. The room stays readable and writable
+     * throughout.
+     */
+    @PostMapping("/rooms/{id}/move")
+    public ResponseEntity<Map<String, Integer>> move(@PathVariable int id, @RequestParam("to") int to) {
+        if (this.rooms.findById(id).isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            this.rebalancer.start(id, to);
+            Map<String, Integer> result = new LinkedHashMap<>();
+            result.put("roomId", id);
+            result.put("shard", to);
+            return new ResponseEntity<>(result, HttpStatus.ACCEPTED);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+    }
+}
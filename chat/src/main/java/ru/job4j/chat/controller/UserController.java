@@ -1,10 +1,15 @@
 package ru.job4j.chat.controller;
 
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import ru.job4j.chat.model.Person;
 import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.service.HashingRejectedException;
 
+import java.security.Principal;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -13,10 +18,10 @@ import java.util.stream.StreamSupport;
 @RequestMapping("/users")
 public class UserController {
     private PersonRepository users;
-    private BCryptPasswordEncoder encoder;
+    private PasswordEncoder encoder;
 
     public UserController(PersonRepository users,
-                          BCryptPasswordEncoder encoder) {
+                          PasswordEncoder encoder) {
         this.users = users;
         this.encoder = encoder;
     }
@@ -27,6 +32,24 @@ public class UserController {
         users.save(p);
     }
 
+    @ExceptionHandler(HashingRejectedException.class)
+    public ResponseEntity<Void> busy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .build();
+    }
+
+    /**
+     * The person logged in, looked up by login alone.
+     */
+    @GetMapping("/me")
+    public ResponseEntity<Person> me(Principal principal) {
+        Person person = users.findPersonByLogin(principal.getName());
+        return person != null
+                ? new ResponseEntity<>(person, HttpStatus.OK)
+                : new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    }
+
     @GetMapping("/all")
     public List<Person> findAll() {
         return StreamSupport.stream(
@@ -0,0 +1,38 @@
+package ru.job4j.chat.filter;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.service.RateLimiter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.security.Principal;
+
+/**
+ * Answers 403 unless the principal set by {@link JWTAuthorizationFilter}
+ * has {@code ROLE_ADMIN}. JWT authentications carry no authorities, so the
+ * role is read from the person.
+ */
+@Component
+public class AdminInterceptor implements HandlerInterceptor {
+    private final PersonRepository persons;
+
+    public AdminInterceptor(PersonRepository persons) {
+        this.persons = persons;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest req, HttpServletResponse res, Object handler) {
+        Principal principal = req.getUserPrincipal();
+        Person person = principal != null ? persons.findPersonByLogin(principal.getName()) : null;
+        if (person != null && person.getRole() != null
+                && RateLimiter.ROLE_ADMIN.equals(person.getRole().getName())) {
+            return true;
+        }
+        res.setStatus(HttpStatus.FORBIDDEN.value());
+        return false;
+    }
+}
@@ -1,7 +1,9 @@
 package ru.job4j.chat.filter;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -9,6 +11,7 @@ import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import ru.job4j.chat.model.Person;
+import ru.job4j.chat.service.HashingRejectedException;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -26,6 +29,7 @@ public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilte
     public static final String TOKEN_PREFIX = "Bearer ";
     public static final String HEADER_STRING = "Authorization";
     public static final String SIGN_UP_URL = "/users/sign-up";
+    public static final Algorithm ALGORITHM = HMAC512(SECRET.getBytes());
 
     private AuthenticationManager auth;
 
@@ -47,6 +51,11 @@ public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilte
                             new ArrayList<>())
             );
 
+        } catch (HashingRejectedException e) {
+            /* null tells the filter the response is already handled */
+            res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            res.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return null;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -61,7 +70,7 @@ public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilte
         String token = JWT.create()
                 .withSubject(((User) auth.getPrincipal()).getUsername())
                 .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
-                .sign(HMAC512(SECRET.getBytes()));
+                .sign(ALGORITHM);
         res.addHeader(HEADER_STRING, TOKEN_PREFIX + token);
     }
 }
@@ -1,7 +1,7 @@
 package ru.job4j.chat.filter;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -12,12 +12,18 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
 
 import static ru.job4j.chat.filter.JWTAuthenticationFilter.*;
 public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
-    public JWTAuthorizationFilter(AuthenticationManager authManager) {
+    private static final Timer AUTHENTICATED = Metrics.timer("chat.jwt.filter", "outcome", "authenticated");
+    private static final Timer ANONYMOUS = Metrics.timer("chat.jwt.filter", "outcome", "anonymous");
+    private static final Timer REJECTED = Metrics.timer("chat.jwt.filter", "outcome", "rejected");
+
+    private final TokenVerifier tokens;
+
+    public JWTAuthorizationFilter(AuthenticationManager authManager, TokenVerifier tokens) {
         super(authManager);
+        this.tokens = tokens;
     }
 
     @Override
@@ -31,26 +37,17 @@ public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
             return;
         }
 
-        UsernamePasswordAuthenticationToken authentication = getAuthentication(req);
+        Timer.Sample sample = Timer.start();
+        UsernamePasswordAuthenticationToken authentication;
+        try {
+            authentication = tokens.authenticate(header);
+        } catch (RuntimeException e) {
+            sample.stop(REJECTED);
+            throw e;
+        }
+        sample.stop(authentication != null ? AUTHENTICATED : ANONYMOUS);
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
         chain.doFilter(req, res);
     }
-
-    private UsernamePasswordAuthenticationToken getAuthentication(HttpServletRequest request) {
-        String token = request.getHeader(HEADER_STRING);
-        if (token != null) {
-            /* parse the token. */
-            String user = JWT.require(Algorithm.HMAC512(SECRET.getBytes()))
-                    .build()
-                    .verify(token.replace(TOKEN_PREFIX, ""))
-                    .getSubject();
-
-            if (user != null) {
-                return new UsernamePasswordAuthenticationToken(user, null, new ArrayList<>());
-            }
-            return null;
-        }
-        return null;
-    }
 }
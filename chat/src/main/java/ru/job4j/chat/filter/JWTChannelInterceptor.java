@@ -0,0 +1,56 @@
+package ru.job4j.chat.filter;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.HEADER_STRING;
+
+/**
+ * Authenticates STOMP sessions with the token from the CONNECT frame.
+ * Clients only listen on the room topics, so SEND frames are refused.
+ */
+public class JWTChannelInterceptor implements ChannelInterceptor {
+    private final TokenVerifier tokens;
+
+    public JWTChannelInterceptor(TokenVerifier tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        StompCommand command = accessor.getCommand();
+        if (StompCommand.CONNECT.equals(command)) {
+            accessor.setUser(authenticate(accessor.getFirstNativeHeader(HEADER_STRING)));
+        } else if (StompCommand.SEND.equals(command)) {
+            throw new AccessDeniedException("Messages are posted over HTTP");
+        } else if (StompCommand.SUBSCRIBE.equals(command) && accessor.getUser() == null) {
+            throw new AccessDeniedException("Not authenticated");
+        }
+        return message;
+    }
+
+    private UsernamePasswordAuthenticationToken authenticate(String header) {
+        UsernamePasswordAuthenticationToken auth;
+        try {
+            auth = tokens.authenticate(header);
+        } catch (JWTVerificationException e) {
+            throw new BadCredentialsException("Invalid token", e);
+        }
+        if (auth == null) {
+            throw new BadCredentialsException("Missing token");
+        }
+        return auth;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.job4j.chat.filter;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.service.RateLimiter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers 429 with {@code Retry-After} when the principal set by
+ * {@link JWTAuthorizationFilter} has posted too fast. Only POSTs are
+ * charged, one token each; the batch import charges a token per message
+ * itself through {@link #acquire}. Anonymous requests are left to the
+ * security chain.
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+    private final RateLimiter limiter;
+    private final PersonRepository persons;
+
+    public RateLimitInterceptor(RateLimiter limiter, PersonRepository persons) {
+        this.limiter = limiter;
+        this.persons = persons;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest req, HttpServletResponse res, Object handler) {
+        Principal principal = req.getUserPrincipal();
+        if (principal == null || !HttpMethod.POST.matches(req.getMethod())) {
+            return true;
+        }
+        long wait = acquire(principal, 1);
+        if (wait == 0) {
+            return true;
+        }
+        res.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        res.setHeader(HttpHeaders.RETRY_AFTER, retryAfter(wait));
+        return false;
+    }
+
+    /**
+     * Takes the tokens of the principal.
+     *
+     * @return 0 when taken, otherwise the nanoseconds until they are free
+     */
+    public long acquire(Principal principal, int tokens) {
+        return limiter.acquire(principal.getName(), () -> roleOf(principal), tokens);
+    }
+
+    /**
+     * The {@code Retry-After} seconds of a wait, rounded up.
+     */
+    public static String retryAfter(long wait) {
+        return String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1)));
+    }
+
+    /* JWT authentications carry no authorities, their role is looked up once per bucket */
+    private String roleOf(Principal principal) {
+        if (principal instanceof Authentication && !((Authentication) principal).getAuthorities().isEmpty()) {
+            return ((Authentication) principal).getAuthorities().stream()
+                    .map(GrantedAuthority::getAuthority)
+                    .filter(RateLimiter.ROLE_ADMIN::equals)
+                    .findAny()
+                    .orElse(null);
+        }
+        Person person = persons.findPersonByLogin(principal.getName());
+        return person != null && person.getRole() != null ? person.getRole().getName() : null;
+    }
+}
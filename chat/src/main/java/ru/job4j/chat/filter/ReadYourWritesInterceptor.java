@@ -0,0 +1,36 @@
+package ru.job4j.chat.filter;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.job4j.chat.service.ReadYourWrites;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.security.Principal;
+import java.util.Set;
+
+/**
+ * Opens the read-your-writes window of the principal on every request
+ * that may write.
+ */
+@Component
+public class ReadYourWritesInterceptor implements HandlerInterceptor {
+    private static final Set<String> READS = Set.of(
+            HttpMethod.GET.name(), HttpMethod.HEAD.name(), HttpMethod.OPTIONS.name());
+
+    private final ReadYourWrites writes;
+
+    public ReadYourWritesInterceptor(ReadYourWrites writes) {
+        this.writes = writes;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest req, HttpServletResponse res, Object handler) {
+        Principal principal = req.getUserPrincipal();
+        if (principal != null && !READS.contains(req.getMethod())) {
+            writes.wrote(principal.getName());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+package ru.job4j.chat.filter;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.ALGORITHM;
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.TOKEN_PREFIX;
+
+/**
+ * Verifies bearer tokens with one shared verifier and remembers the
+ * verified ones until they expire, so a client sending the same token
+ * again skips the HMAC check and the JSON parsing. The cache is keyed by
+ * the SHA-256 of the token, raw tokens are not kept.
+ */
+@Component
+public class TokenVerifier {
+    private static final JWTVerifier VERIFIER = JWT.require(ALGORITHM).build();
+
+    /* cloned per call, a thread local copy would be built for every virtual thread */
+    private static final MessageDigest SHA256;
+
+    static {
+        try {
+            SHA256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final Cache<String, Verified> verified;
+
+    public TokenVerifier(@Value("${chat.jwt.cache-size:10000}") long cacheSize) {
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new Expiry<String, Verified>() {
+                    @Override
+                    public long expireAfterCreate(String key, Verified value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.expiresAt - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Verified value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Verified value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(Metrics.globalRegistry, verified, "jwt", "cache.manager", "tokenVerifier", "name", "jwt");
+    }
+
+    /**
+     * Checks the value of an {@code Authorization} header.
+     *
+     * @return the authentication, or {@code null} if the token has no subject
+     * @throws JWTVerificationException if the token is invalid or expired
+     */
+    public UsernamePasswordAuthenticationToken authenticate(String header) {
+        if (header == null) {
+            return null;
+        }
+        String user = verify(header.replace(TOKEN_PREFIX, ""));
+        return user != null ? new UsernamePasswordAuthenticationToken(user, null, new ArrayList<>()) : null;
+    }
+
+    /**
+     * Returns the subject of the token.
+     */
+    public String verify(String token) {
+        String key = hash(token);
+        Verified known = verified.getIfPresent(key);
+        if (known != null && known.expiresAt > System.currentTimeMillis()) {
+            return known.subject;
+        }
+        DecodedJWT jwt = VERIFIER.verify(token);
+        if (jwt.getSubject() != null && jwt.getExpiresAt() != null) {
+            verified.put(key, new Verified(jwt.getSubject(), jwt.getExpiresAt().getTime()));
+        }
+        return jwt.getSubject();
+    }
+
+    private static String hash(String token) {
+        MessageDigest sha256;
+        try {
+            sha256 = (MessageDigest) SHA256.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] digest = sha256.digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getEncoder().encodeToString(digest);
+    }
+
+    private static final class Verified {
+        private final String subject;
+        private final long expiresAt;
+
+        private Verified(String subject, long expiresAt) {
+            this.subject = subject;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -7,17 +7,22 @@ import java.util.Objects;
 @Entity
 @Table(name = "message")
 public class Message {
+    /* sequence ids let Hibernate batch the inserts, 50 ids per round trip */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "message_seq")
+    @SequenceGenerator(name = "message_seq", sequenceName = "message_id_seq", allocationSize = 50)
     private int id;
     private String text;
+    /* set once on insert, an edit keeps the time the message was posted */
+    @Column(updatable = false)
     private Timestamp time;
 
-    @ManyToOne(cascade = CascadeType.ALL)
+    /* no cascade: a message only references its author and room */
+    @ManyToOne
     @JoinColumn(name = "person_id", foreignKey = @ForeignKey(name = "PERSON_ID_FK"))
     private Person person;
 
-    @ManyToOne(cascade = CascadeType.ALL)
+    @ManyToOne
     @JoinColumn(name = "room_id", foreignKey = @ForeignKey(name = "ROOM_ID_FK"))
     private Room room;
 
@@ -68,10 +73,22 @@ public class Message {
         this.room = room;
     }
 
+    /* time is part of the key of the partitioned table */
+    @PrePersist
+    void stamp() {
+        if (time == null) {
+            time = new Timestamp(System.currentTimeMillis());
+        }
+    }
+
     public Timestamp getTime() {
         return time;
     }
 
+    public void setTime(Timestamp time) {
+        this.time = time;
+    }
+
     @Override
     public String toString() {
         return "Message{" +
@@ -0,0 +1,117 @@
+package ru.job4j.chat.model;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * How far a person has read a room, and how many messages came after that.
+ * Written periodically from the in-memory counters, plain ids keep the
+ * rows free of joins.
+ */
+@Entity
+@Table(name = "read_marker")
+@IdClass(ReadMarker.Key.class)
+public class ReadMarker {
+    @Id
+    @Column(name = "person_id")
+    private int personId;
+    @Id
+    @Column(name = "room_id")
+    private int roomId;
+    @Column(name = "last_read_id")
+    private int lastReadId;
+    private long unread;
+
+    public static ReadMarker of(int personId, int roomId, int lastReadId, long unread) {
+        ReadMarker m = new ReadMarker();
+        m.personId = personId;
+        m.roomId = roomId;
+        m.lastReadId = lastReadId;
+        m.unread = unread;
+        return m;
+    }
+
+    public int getPersonId() {
+        return personId;
+    }
+
+    public void setPersonId(int personId) {
+        this.personId = personId;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(int roomId) {
+        this.roomId = roomId;
+    }
+
+    public int getLastReadId() {
+        return lastReadId;
+    }
+
+    public void setLastReadId(int lastReadId) {
+        this.lastReadId = lastReadId;
+    }
+
+    public long getUnread() {
+        return unread;
+    }
+
+    public void setUnread(long unread) {
+        this.unread = unread;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadMarker{" +
+                "personId=" + personId +
+                ", roomId=" + roomId +
+                ", lastReadId=" + lastReadId +
+                ", unread=" + unread +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ReadMarker that = (ReadMarker) o;
+        return personId == that.personId &&
+                roomId == that.roomId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(personId, roomId);
+    }
+
+    public static class Key implements Serializable {
+        private int personId;
+        private int roomId;
+
+        public Key() {
+        }
+
+        public Key(int personId, int roomId) {
+            this.personId = personId;
+            this.roomId = roomId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return personId == key.personId &&
+                    roomId == key.roomId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(personId, roomId);
+        }
+    }
+}
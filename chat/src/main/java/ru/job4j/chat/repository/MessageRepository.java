@@ -1,10 +1,68 @@
 package ru.job4j.chat.repository;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import ru.job4j.chat.model.Message;
 
+import javax.persistence.QueryHint;
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
+import static org.hibernate.annotations.QueryHints.READ_ONLY;
+
+/**
+ * The listing queries fetch the author, its role and the room in the same
+ * select, otherwise every distinct person, role and room costs one more.
+ * All of them are read-only, the inherited writes keep their own transactions.
+ */
+@Transactional(readOnly = true)
 public interface MessageRepository extends CrudRepository<Message, Integer> {
-    List<Message> getByRoomId(int id);
+    String FETCH_ALL = "select m from Message m "
+            + "left join fetch m.person p left join fetch p.role left join fetch m.room r ";
+
+    @Override
+    @Query(FETCH_ALL + "order by m.id")
+    List<Message> findAll();
+
+    @Query(FETCH_ALL + "where r.id = :roomId order by m.id")
+    List<Message> getByRoomId(@Param("roomId") int id);
+
+    @Query(FETCH_ALL + "where m.id in :ids order by m.id")
+    List<Message> findByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /* forward-only cursor, must be consumed inside a transaction and closed */
+    @QueryHints({
+            @QueryHint(name = FETCH_SIZE, value = "500"),
+            @QueryHint(name = READ_ONLY, value = "true")
+    })
+    @Query(FETCH_ALL + "where r.id = :roomId order by m.id")
+    Stream<Message> streamByRoomId(@Param("roomId") int id);
+
+    /* keyset pages, served by the (room_id, id) index */
+    @Query(FETCH_ALL + "where r.id = :roomId order by m.id desc")
+    List<Message> findByRoomIdOrderByIdDesc(@Param("roomId") int roomId, Pageable pageable);
+
+    @Query(FETCH_ALL + "where r.id = :roomId and m.id < :before order by m.id desc")
+    List<Message> findByRoomIdAndIdLessThanOrderByIdDesc(@Param("roomId") int roomId,
+                                                         @Param("before") int before, Pageable pageable);
+
+    @Query(FETCH_ALL + "where r.id = :roomId and m.id > :after order by m.id")
+    List<Message> findByRoomIdAndIdGreaterThanOrderByIdAsc(@Param("roomId") int roomId,
+                                                           @Param("after") int after, Pageable pageable);
+
+    /* bounded by time, so only the monthly partitions of the range are scanned */
+    @Query(FETCH_ALL + "where r.id = :roomId and m.time >= :from and m.time < :to and m.id > :after order by m.id")
+    List<Message> findByRoomIdAndTimeRange(@Param("roomId") int roomId, @Param("from") Timestamp from,
+                                           @Param("to") Timestamp to, @Param("after") int after, Pageable pageable);
+
+    /* unread messages after a read marker, counted on the (room_id, id) index */
+    @Query("select count(m) from Message m where m.room.id = :roomId and m.id > :after")
+    long countByRoomIdAndIdGreaterThan(@Param("roomId") int roomId, @Param("after") int after);
 }
@@ -0,0 +1,260 @@
+package ru.job4j.chat.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * The databases holding the messages, each with the schema of
+ * {@code db/shard/001.sql}. A room lives on the shard the {@link ShardRing}
+ * gives it, unless the rebalancer has placed it elsewhere; placements are
+ * kept in {@code room_shard} of the main database and reloaded every
+ * {@code chat.shards.refresh-ms}.
+ *
+ * <p>A shard is known by its position in {@code chat.shards.urls}, so new
+ * shards are appended and never reordered. Ids are unique across the shards,
+ * every shard hands out the multiples of {@value #MAX_SHARDS} plus its own
+ * position, in blocks of {@value #ID_BLOCK} taken from its sequence.
+ */
+public class MessageShards implements Closeable {
+    public static final int MAX_SHARDS = 16;
+    static final int ID_BLOCK = 50;
+
+    private final List<DataSource> dataSources;
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+    private final List<IdBlock> ids = new ArrayList<>();
+    private final ShardRing ring;
+    private final JdbcTemplate main;
+    private final Map<Integer, Move> moves = new ConcurrentHashMap<>();
+    private final ExecutorService scatter;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "shard-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+    /* a lock rather than synchronized, room_shard is written and read while holding it */
+    private final ReentrantLock placements = new ReentrantLock();
+    private volatile Map<Integer, Integer> placed = Map.of();
+
+    public MessageShards(List<DataSource> dataSources, JdbcTemplate main, int vnodes, long refreshMillis) {
+        if (dataSources.isEmpty() || dataSources.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_SHARDS + " shards are supported");
+        }
+        this.dataSources = dataSources;
+        this.main = main;
+        this.ring = new ShardRing(dataSources.size(), vnodes);
+        for (DataSource dataSource : dataSources) {
+            shards.add(new JdbcTemplate(dataSource));
+            ids.add(new IdBlock());
+        }
+        AtomicInteger n = new AtomicInteger();
+        this.scatter = Executors.newFixedThreadPool(2 * dataSources.size(), r -> {
+            Thread t = new Thread(r, "shard-scatter-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        refresh();
+        refresher.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    public int shardOf(int roomId) {
+        Integer shard = placed.get(roomId);
+        return shard != null ? shard : ring.shardOf(roomId);
+    }
+
+    /* a room being moved has rows on two shards for a while, only the owner's count */
+    public boolean owns(int shard, int roomId) {
+        return shardOf(roomId) == shard;
+    }
+
+    public JdbcTemplate jdbc(int shard) {
+        return shards.get(shard);
+    }
+
+    public DataSource dataSource(int shard) {
+        return dataSources.get(shard);
+    }
+
+    /**
+     * Runs the task on every shard at once.
+     *
+     * @return the results in shard order
+     */
+    public <T> List<T> scatter(IntFunction<T> task) {
+        if (shards.size() == 1) {
+            return Collections.singletonList(task.apply(0));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(shard), scatter));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs a write of the room on its shard. While the room is being moved
+     * the write waits for the batch being copied, and with {@code both} it
+     * is applied to the other shard of the move as well, so the copy stays
+     * the same as the original.
+     */
+    public void write(int roomId, boolean both, IntConsumer write) {
+        Move move = moves.get(roomId);
+        if (move == null) {
+            write.accept(shardOf(roomId));
+            return;
+        }
+        move.lock.readLock().lock();
+        try {
+            int shard = shardOf(roomId);
+            write.accept(shard);
+            if (both) {
+                write.accept(shard == move.source ? move.target : move.source);
+            }
+        } finally {
+            move.lock.readLock().unlock();
+        }
+    }
+
+    public int nextId(int shard) {
+        IdBlock block = ids.get(shard);
+        long n;
+        block.lock.lock();
+        try {
+            if (block.next == block.limit) {
+                Long first = shards.get(shard).queryForObject("select nextval('message_shard_seq')", Long.class);
+                block.next = first;
+                block.limit = first + ID_BLOCK;
+            }
+            n = block.next++;
+        } finally {
+            block.lock.unlock();
+        }
+        long id = n * MAX_SHARDS + shard;
+        if (id > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Message ids of shard " + shard + " are used up");
+        }
+        return (int) id;
+    }
+
+    /**
+     * Marks the room as moving from its current shard to the target.
+     *
+     * @throws IllegalStateException if the room is already moving
+     */
+    public Move startMove(int roomId, int target) {
+        Move move = new Move(shardOf(roomId), target);
+        if (moves.putIfAbsent(roomId, move) != null) {
+            throw new IllegalStateException("Room " + roomId + " is already being moved");
+        }
+        return move;
+    }
+
+    public void finishMove(int roomId) {
+        moves.remove(roomId);
+    }
+
+    /* pins the room to the shard for every node */
+    public void place(int roomId, int shard) {
+        placements.lock();
+        try {
+            if (main.update("update room_shard set shard = ? where room_id = ?", shard, roomId) == 0) {
+                main.update("insert into room_shard(room_id, shard) values (?, ?)", roomId, shard);
+            }
+            Map<Integer, Integer> next = new HashMap<>(placed);
+            next.put(roomId, shard);
+            placed = next;
+        } finally {
+            placements.unlock();
+        }
+    }
+
+    void refresh() {
+        placements.lock();
+        try {
+            Map<Integer, Integer> next = new HashMap<>();
+            main.query("select room_id, shard from room_shard", rs -> {
+                next.put(rs.getInt(1), rs.getInt(2));
+            });
+            placed = next;
+        } finally {
+            placements.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        refresher.shutdownNow();
+        scatter.shutdownNow();
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof Closeable) {
+                ((Closeable) dataSource).close();
+            }
+        }
+    }
+
+    /**
+     * A move in progress. The rebalancer holds the write lock while it
+     * copies a batch, writes to the room hold the read lock.
+     */
+    public static final class Move {
+        private final int source;
+        private final int target;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private Move(int source, int target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        public int getSource() {
+            return source;
+        }
+
+        public int getTarget() {
+            return target;
+        }
+
+        public ReentrantReadWriteLock getLock() {
+            return lock;
+        }
+    }
+
+    /* a lock rather than synchronized, the sequence is read while holding it */
+    private static final class IdBlock {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long next;
+        private long limit;
+    }
+}
@@ -1,10 +1,55 @@
 package ru.job4j.chat.repository;
 
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.job4j.chat.model.Person;
 
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * {@link #findById} and, briefly, {@link #findPersonByLogin} are cached,
+ * every write through this repository evicts the entries.
+ */
 @Repository
 public interface PersonRepository extends CrudRepository<Person, Integer> {
+    @Cacheable(value = "logins", unless = "#result == null")
+    @Transactional(readOnly = true)
     Person findPersonByLogin(String login);
+
+    @Transactional(readOnly = true)
+    @Query("select p.id from Person p where p.id in :ids")
+    Set<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    @Override
+    @Cacheable(value = "persons", unless = "#result == null")
+    Optional<Person> findById(Integer id);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = "persons", key = "#p0.id"),
+            @CacheEvict(value = "logins", key = "#p0.login", condition = "#p0.login != null")
+    })
+    <S extends Person> S save(S entity);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = "persons", key = "#p0.id"),
+            @CacheEvict(value = "logins", allEntries = true)
+    })
+    void delete(Person entity);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = "persons", key = "#p0"),
+            @CacheEvict(value = "logins", allEntries = true)
+    })
+    void deleteById(Integer id);
 }
@@ -0,0 +1,24 @@
+package ru.job4j.chat.repository;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.model.ReadMarker;
+
+import java.util.List;
+
+public interface ReadMarkerRepository extends CrudRepository<ReadMarker, ReadMarker.Key> {
+    List<ReadMarker> findByRoomId(int roomId);
+
+    List<ReadMarker> findByPersonId(int personId);
+
+    /* no select before the write, returns 0 when the row does not exist yet */
+    @Transactional
+    @Modifying
+    @Query("update ReadMarker r set r.lastReadId = :lastReadId, r.unread = :unread "
+            + "where r.personId = :personId and r.roomId = :roomId")
+    int update(@Param("personId") int personId, @Param("roomId") int roomId,
+               @Param("lastReadId") int lastReadId, @Param("unread") long unread);
+}
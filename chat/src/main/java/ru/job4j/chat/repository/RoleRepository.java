@@ -1,8 +1,44 @@
 package ru.job4j.chat.repository;
 
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.data.repository.CrudRepository;
 import ru.job4j.chat.model.Role;
 
+import java.util.Optional;
+
+/**
+ * {@link #findById} is cached. A cached person embeds its role, so role
+ * writes drop the whole person and login caches as well, a demoted admin
+ * loses admin access at once.
+ */
 public interface RoleRepository extends CrudRepository<Role, Integer> {
-    
+    @Override
+    @Cacheable(value = "roles", unless = "#result == null")
+    Optional<Role> findById(Integer id);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = "roles", key = "#p0.id"),
+            @CacheEvict(value = "persons", allEntries = true),
+            @CacheEvict(value = "logins", allEntries = true)
+    })
+    <S extends Role> S save(S entity);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = "roles", key = "#p0.id"),
+            @CacheEvict(value = "persons", allEntries = true),
+            @CacheEvict(value = "logins", allEntries = true)
+    })
+    void delete(Role entity);
+
+    @Override
+    @Caching(evict = {
+            @CacheEvict(value = "roles", key = "#p0"),
+            @CacheEvict(value = "persons", allEntries = true),
+            @CacheEvict(value = "logins", allEntries = true)
+    })
+    void deleteById(Integer id);
 }
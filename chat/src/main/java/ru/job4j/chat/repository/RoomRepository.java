@@ -1,9 +1,31 @@
 package ru.job4j.chat.repository;
 
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 import ru.job4j.chat.model.Room;
 
+import java.util.Optional;
+
+/**
+ * {@link #findById} is cached, every write through this repository evicts the entry.
+ */
 @Repository
 public interface RoomRepository extends CrudRepository<Room, Integer> {
+    @Override
+    @Cacheable(value = "rooms", unless = "#result == null")
+    Optional<Room> findById(Integer id);
+
+    @Override
+    @CacheEvict(value = "rooms", key = "#p0.id")
+    <S extends Room> S save(S entity);
+
+    @Override
+    @CacheEvict(value = "rooms", key = "#p0.id")
+    void delete(Room entity);
+
+    @Override
+    @CacheEvict(value = "rooms", key = "#p0")
+    void deleteById(Integer id);
 }
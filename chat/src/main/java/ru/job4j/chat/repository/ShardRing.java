@@ -0,0 +1,48 @@
+package ru.job4j.chat.repository;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of room ids onto shards. Every shard owns
+ * {@code vnodes} points of a 64-bit ring and a room belongs to the first
+ * point at or after its own hash, so adding a shard only takes rooms over
+ * from the others, about one in {@code shards + 1}, and moves none between
+ * the old ones.
+ */
+public final class ShardRing {
+    private final TreeMap<Long, Integer> points = new TreeMap<>();
+    private final int shards;
+
+    public ShardRing(int shards, int vnodes) {
+        if (shards < 1 || vnodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one shard and one point per shard");
+        }
+        this.shards = shards;
+        for (int shard = 0; shard < shards; shard++) {
+            for (int v = 0; v < vnodes; v++) {
+                /* the high half keeps the points apart from the room hashes */
+                points.putIfAbsent(mix(((long) (shard + 1) << 32) | v), shard);
+            }
+        }
+    }
+
+    public int shardOf(int roomId) {
+        Map.Entry<Long, Integer> point = points.ceilingEntry(mix(roomId & 0xffffffffL));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    public int size() {
+        return shards;
+    }
+
+    /* the finalizer of MurmurHash3 */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
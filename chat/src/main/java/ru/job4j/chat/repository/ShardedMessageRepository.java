@@ -0,0 +1,439 @@
+package ru.job4j.chat.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@link MessageRepository} over the {@link MessageShards}, used instead of
+ * the JPA one when {@code chat.shards.urls} is set. Reads and writes of a
+ * room go to the room's shard only. Lookups by id alone ask every shard at
+ * once, and {@link #findAll} merges the time-ordered cursors of all shards.
+ *
+ * <p>The shards hold the messages only: authors and rooms stay in the main
+ * database and are read through the cached {@link PersonRepository#findById}
+ * and {@link RoomRepository#findById}. A message without a room is kept with
+ * the messages of room 0, and an update keeps a message in its room.
+ * No transaction of the main database is opened for the shard statements.
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "chat.shards.urls")
+@Transactional(propagation = Propagation.SUPPORTS)
+public class ShardedMessageRepository implements MessageRepository {
+    private static final String SELECT = "select id, text, time, person_id, room_id from message ";
+    private static final String INSERT = "insert into message(id, text, time, person_id, room_id) values (?, ?, ?, ?, ?)";
+    private static final int FETCH_SIZE = 500;
+    private static final Comparator<Row> BY_TIME = Comparator
+            .comparing((Row row) -> row.time, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparingInt(row -> row.id);
+    private static final RowMapper<Row> ROW = (rs, n) -> new Row(rs.getInt("id"), rs.getString("text"),
+            rs.getTimestamp("time"), integer(rs, "person_id"), integer(rs, "room_id"));
+
+    private final MessageShards shards;
+    private final PersonRepository persons;
+    private final RoomRepository rooms;
+
+    public ShardedMessageRepository(MessageShards shards, PersonRepository persons, RoomRepository rooms) {
+        this.shards = shards;
+        this.persons = persons;
+        this.rooms = rooms;
+    }
+
+    @Override
+    public <S extends Message> S save(S message) {
+        if (message.getId() == 0) {
+            shards.write(roomId(message), false, shard -> {
+                message.setId(shards.nextId(shard));
+                insert(shards.jdbc(shard), List.of(message));
+            });
+        } else if (message.getRoom() != null) {
+            update(message.getRoom().getId(), message);
+        } else {
+            /* the room is not known, the row tells on which shard it is */
+            rows(SELECT + "where id = ?", message.getId()).forEach(row -> update(row.roomId(), message));
+        }
+        return message;
+    }
+
+    /* new messages of a room are inserted as one JDBC batch */
+    @Override
+    public <S extends Message> Iterable<S> saveAll(Iterable<S> messages) {
+        List<S> result = new ArrayList<>();
+        Map<Integer, List<S>> fresh = new LinkedHashMap<>();
+        for (S message : messages) {
+            result.add(message);
+            if (message.getId() == 0) {
+                fresh.computeIfAbsent(roomId(message), k -> new ArrayList<>()).add(message);
+            } else {
+                save(message);
+            }
+        }
+        fresh.forEach((roomId, batch) -> shards.write(roomId, false, shard -> {
+            batch.forEach(m -> m.setId(shards.nextId(shard)));
+            insert(shards.jdbc(shard), batch);
+        }));
+        return result;
+    }
+
+    @Override
+    public Optional<Message> findById(Integer id) {
+        return findByIdIn(List.of(id)).stream().findFirst();
+    }
+
+    @Override
+    public boolean existsById(Integer id) {
+        return !rows(SELECT + "where id = ?", id).isEmpty();
+    }
+
+    /**
+     * Every message, oldest first. Each shard streams its messages in time
+     * order through a cursor and the heads of the cursors are merged, so no
+     * shard result is held in full besides the returned list.
+     */
+    @Override
+    public List<Message> findAll() {
+        List<Cursor> cursors = Collections.synchronizedList(new ArrayList<>());
+        try {
+            shards.scatter(shard -> cursors.add(open(shard, SELECT + "order by time nulls last, id")));
+            PriorityQueue<Cursor> heads = new PriorityQueue<>(shards.size(), Comparator.comparing(Cursor::peek, BY_TIME));
+            for (Cursor cursor : cursors) {
+                if (cursor.hasNext()) {
+                    heads.add(cursor);
+                }
+            }
+            Refs refs = new Refs();
+            List<Message> result = new ArrayList<>();
+            while (!heads.isEmpty()) {
+                Cursor cursor = heads.poll();
+                result.add(refs.message(cursor.next()));
+                if (cursor.hasNext()) {
+                    heads.add(cursor);
+                }
+            }
+            return result;
+        } finally {
+            cursors.forEach(Cursor::close);
+        }
+    }
+
+    @Override
+    public Iterable<Message> findAllById(Iterable<Integer> ids) {
+        List<Integer> list = new ArrayList<>();
+        ids.forEach(list::add);
+        return findByIdIn(list);
+    }
+
+    @Override
+    public long count() {
+        return shards.scatter(shard -> {
+            long[] count = {0};
+            shards.jdbc(shard).query("select room_id, count(*) from message group by room_id", rs -> {
+                if (shards.owns(shard, rs.getInt(1))) {
+                    count[0] += rs.getLong(2);
+                }
+            });
+            return count[0];
+        }).stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public void deleteById(Integer id) {
+        rows(SELECT + "where id = ?", id).forEach(row -> delete(row.roomId(), id));
+    }
+
+    @Override
+    public void delete(Message message) {
+        if (message.getRoom() != null) {
+            delete(message.getRoom().getId(), message.getId());
+        } else {
+            deleteById(message.getId());
+        }
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends Integer> ids) {
+        ids.forEach(this::deleteById);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Message> messages) {
+        messages.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        shards.scatter(shard -> shards.jdbc(shard).update("delete from message"));
+    }
+
+    @Override
+    public List<Message> getByRoomId(int id) {
+        return room(id, SELECT + "where room_id = ? order by id", id);
+    }
+
+    @Override
+    public List<Message> findByIdIn(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Object> params = Map.of("ids", ids);
+        List<Row> rows = shards.scatter(shard -> owned(shard, new NamedParameterJdbcTemplate(shards.jdbc(shard))
+                .query(SELECT + "where id in (:ids)", params, ROW)))
+                .stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingInt(row -> row.id))
+                .collect(Collectors.toList());
+        return new Refs().messages(rows);
+    }
+
+    /* a cursor on the room's shard, must be closed */
+    @Override
+    public Stream<Message> streamByRoomId(int id) {
+        Cursor cursor = open(shards.shardOf(id), SELECT + "where room_id = ? order by id", id);
+        Refs refs = new Refs();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .onClose(cursor::close)
+                .map(refs::message);
+    }
+
+    @Override
+    public List<Message> findByRoomIdOrderByIdDesc(int roomId, Pageable pageable) {
+        return room(roomId, SELECT + "where room_id = ? order by id desc limit ? offset ?",
+                roomId, pageable.getPageSize(), pageable.getOffset());
+    }
+
+    @Override
+    public List<Message> findByRoomIdAndIdLessThanOrderByIdDesc(int roomId, int before, Pageable pageable) {
+        return room(roomId, SELECT + "where room_id = ? and id < ? order by id desc limit ? offset ?",
+                roomId, before, pageable.getPageSize(), pageable.getOffset());
+    }
+
+    @Override
+    public List<Message> findByRoomIdAndIdGreaterThanOrderByIdAsc(int roomId, int after, Pageable pageable) {
+        return room(roomId, SELECT + "where room_id = ? and id > ? order by id limit ? offset ?",
+                roomId, after, pageable.getPageSize(), pageable.getOffset());
+    }
+
+    @Override
+    public List<Message> findByRoomIdAndTimeRange(int roomId, Timestamp from, Timestamp to, int after,
+                                                  Pageable pageable) {
+        return room(roomId, SELECT + "where room_id = ? and time >= ? and time < ? and id > ? order by id limit ? offset ?",
+                roomId, from, to, after, pageable.getPageSize(), pageable.getOffset());
+    }
+
+    @Override
+    public long countByRoomIdAndIdGreaterThan(int roomId, int after) {
+        Long count = shards.jdbc(shards.shardOf(roomId)).queryForObject(
+                "select count(*) from message where room_id = ? and id > ?", Long.class, roomId, after);
+        return count == null ? 0 : count;
+    }
+
+    private List<Message> room(int roomId, String sql, Object... args) {
+        return new Refs().messages(shards.jdbc(shards.shardOf(roomId)).query(sql, ROW, args));
+    }
+
+    /* the owned rows of every shard */
+    private List<Row> rows(String sql, Object... args) {
+        return shards.scatter(shard -> owned(shard, shards.jdbc(shard).query(sql, ROW, args)))
+                .stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    private List<Row> owned(int shard, List<Row> rows) {
+        rows.removeIf(row -> !shards.owns(shard, row.roomId()));
+        return rows;
+    }
+
+    private void update(int roomId, Message message) {
+        shards.write(roomId, true, shard -> shards.jdbc(shard).update(
+                "update message set text = ?, person_id = ? where id = ?",
+                message.getText(), personId(message), message.getId()));
+    }
+
+    private void delete(int roomId, int id) {
+        shards.write(roomId, true, shard -> shards.jdbc(shard).update("delete from message where id = ?", id));
+    }
+
+    private static void insert(JdbcTemplate jdbc, List<? extends Message> messages) {
+        jdbc.batchUpdate(INSERT, messages, messages.size(), (ps, m) -> {
+            ps.setInt(1, m.getId());
+            ps.setString(2, m.getText());
+            ps.setTimestamp(3, m.getTime());
+            ps.setObject(4, personId(m));
+            ps.setObject(5, m.getRoom() != null ? m.getRoom().getId() : null);
+        });
+    }
+
+    private Cursor open(int shard, String sql, Object... args) {
+        Connection connection = null;
+        try {
+            connection = shards.dataSource(shard).getConnection();
+            /* Postgres only fetches in pages inside a transaction */
+            connection.setAutoCommit(false);
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            return new Cursor(shard, connection, statement.executeQuery());
+        } catch (SQLException e) {
+            JdbcUtils.closeConnection(connection);
+            throw translate(shard, sql, e);
+        }
+    }
+
+    private DataAccessException translate(int shard, String sql, SQLException e) {
+        DataAccessException translated = shards.jdbc(shard).getExceptionTranslator().translate("cursor", sql, e);
+        return translated != null ? translated : new UncategorizedSQLException("cursor", sql, e);
+    }
+
+    private static int roomId(Message message) {
+        return message.getRoom() != null ? message.getRoom().getId() : 0;
+    }
+
+    private static Integer personId(Message message) {
+        return message.getPerson() != null ? message.getPerson().getId() : null;
+    }
+
+    private static Integer integer(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static final class Row {
+        private final int id;
+        private final String text;
+        private final Timestamp time;
+        private final Integer personId;
+        private final Integer roomId;
+
+        private Row(int id, String text, Timestamp time, Integer personId, Integer roomId) {
+            this.id = id;
+            this.text = text;
+            this.time = time;
+            this.personId = personId;
+            this.roomId = roomId;
+        }
+
+        private int roomId() {
+            return roomId == null ? 0 : roomId;
+        }
+    }
+
+    /* the authors and rooms of one result, each looked up once */
+    private final class Refs {
+        private final Map<Integer, Optional<Person>> authors = new HashMap<>();
+        private final Map<Integer, Optional<Room>> places = new HashMap<>();
+
+        List<Message> messages(List<Row> rows) {
+            List<Message> result = new ArrayList<>(rows.size());
+            rows.forEach(row -> result.add(message(row)));
+            return result;
+        }
+
+        Message message(Row row) {
+            Message m = new Message(row.text);
+            m.setId(row.id);
+            m.setTime(row.time);
+            if (row.personId != null) {
+                m.setPerson(authors.computeIfAbsent(row.personId, persons::findById).orElse(null));
+            }
+            if (row.roomId != null) {
+                m.setRoom(places.computeIfAbsent(row.roomId, rooms::findById).orElse(null));
+            }
+            return m;
+        }
+    }
+
+    /**
+     * The rows of one shard that the shard owns, read a page at a time.
+     * Closing it returns the connection.
+     */
+    private final class Cursor implements Iterator<Row>, AutoCloseable {
+        private final int shard;
+        private final Connection connection;
+        private final ResultSet rows;
+        private Row next;
+        private boolean done;
+
+        private Cursor(int shard, Connection connection, ResultSet rows) {
+            this.shard = shard;
+            this.connection = connection;
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                try {
+                    while (next == null && rows.next()) {
+                        Row row = ROW.mapRow(rows, 0);
+                        if (row != null && shards.owns(shard, row.roomId())) {
+                            next = row;
+                        }
+                    }
+                } catch (SQLException e) {
+                    throw translate(shard, "cursor", e);
+                }
+                done = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Row row = next;
+            next = null;
+            return row;
+        }
+
+        Row peek() {
+            return hasNext() ? next : null;
+        }
+
+        @Override
+        public void close() {
+            JdbcUtils.closeResultSet(rows);
+            JdbcUtils.closeConnection(connection);
+        }
+    }
+}
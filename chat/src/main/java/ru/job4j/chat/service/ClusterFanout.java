@@ -0,0 +1,278 @@
+package ru.job4j.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.repository.MessageRepository;
+
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares new, edited and deleted messages and read markers between the
+ * nodes of a cluster through Postgres, enabled with
+ * {@code chat.cluster.enabled=true}, so the event streams, the recent
+ * messages and the unread counters of every node stay right.
+ *
+ * <p>After a local change its node sends {@code pg_notify} on
+ * {@code chat.cluster.channel} with {@code node:c:room:id} for a new
+ * message, {@code node:u:room:id} for an edit, {@code node:d:room:id:author}
+ * for a deletion, the room and the author left empty when unknown, and
+ * {@code node:r:room:upTo:person} for a read marker. Every node keeps one
+ * connection of its own, outside the pool, listening on the channel.
+ * Notifications arriving within {@code chat.cluster.linger-ms} of each other
+ * are handled together: the new and edited messages are loaded with one
+ * query, and everything is published again as remote events, which reach
+ * the local listeners but are not sent on. A node skips its own
+ * notifications. The messages are loaded in a read-write transaction, so
+ * from the primary: a replica may not have them yet.
+ *
+ * <p>Notifications sent while the listening connection is down are lost,
+ * event streams resuming with {@code Last-Event-ID} still get them.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.cluster.enabled", havingValue = "true")
+public class ClusterFanout {
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterFanout.class);
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final Counter RECEIVED = Metrics.counter("chat.cluster.received");
+    private static final Counter SENT = Metrics.counter("chat.cluster.sent");
+    private static final String CREATED = "c";
+    private static final String UPDATED = "u";
+    private static final String DELETED = "d";
+    private static final String READ = "r";
+
+    private final String node = UUID.randomUUID().toString().substring(0, 8);
+    private final JdbcTemplate jdbc;
+    private final DataSourceProperties dataSource;
+    private final MessageRepository messages;
+    private final TransactionTemplate tx;
+    private final ApplicationEventPublisher events;
+    private final String channel;
+    private final long lingerMillis;
+    private final int maxBatch;
+    private final Thread listener;
+    private volatile boolean running = true;
+    private volatile Connection connection;
+
+    public ClusterFanout(JdbcTemplate jdbc, DataSourceProperties dataSource, MessageRepository messages,
+                         TransactionTemplate tx, ApplicationEventPublisher events,
+                         @Value("${chat.cluster.channel:chat_messages}") String channel,
+                         @Value("${chat.cluster.linger-ms:10}") long lingerMillis,
+                         @Value("${chat.cluster.max-batch:500}") int maxBatch) {
+        this.jdbc = jdbc;
+        this.dataSource = dataSource;
+        this.messages = messages;
+        this.tx = tx;
+        this.events = events;
+        this.channel = channel;
+        this.lingerMillis = lingerMillis;
+        this.maxBatch = maxBatch;
+        this.listener = new Thread(this::listen, "cluster-listen");
+        this.listener.setDaemon(true);
+    }
+
+    /* remote events are only published once every listener is in place */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listener.start();
+    }
+
+    @EventListener
+    public void onCreated(MessageCreatedEvent event) {
+        if (!event.isRemote()) {
+            notify(CREATED + ":" + event.getRoomId() + ":" + event.getMessage().getId());
+        }
+    }
+
+    @EventListener
+    public void onUpdated(MessageUpdatedEvent event) {
+        Message message = event.getMessage();
+        if (!event.isRemote() && message != null) {
+            notify(UPDATED + ":" + (message.getRoom() != null ? message.getRoom().getId() : "") + ":" + message.getId());
+        }
+    }
+
+    @EventListener
+    public void onDeleted(MessageDeletedEvent event) {
+        if (!event.isRemote()) {
+            notify(DELETED + ":" + (event.getRoomId() != null ? event.getRoomId() : "") + ":" + event.getMessageId()
+                    + ":" + (event.getAuthorId() != null ? event.getAuthorId() : ""));
+        }
+    }
+
+    @EventListener
+    public void onRead(RoomReadEvent event) {
+        if (!event.isRemote()) {
+            notify(READ + ":" + event.getRoomId() + ":" + event.getUpTo() + ":" + event.getPersonId());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        listener.interrupt();
+        Connection cn = connection;
+        if (cn != null) {
+            try {
+                cn.close();
+            } catch (SQLException e) {
+                LOG.debug("Closing the listening connection", e);
+            }
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection cn = DriverManager.getConnection(
+                    dataSource.determineUrl(), dataSource.determineUsername(), dataSource.determinePassword())) {
+                connection = cn;
+                try (Statement st = cn.createStatement()) {
+                    st.execute("LISTEN \"" + channel.replace("\"", "") + "\"");
+                }
+                LOG.info("Node {} listening on {}", node, channel);
+                PGConnection pg = cn.unwrap(PGConnection.class);
+                while (running) {
+                    dispatch(receive(pg));
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    LOG.warn("Cluster listener failed, reconnecting", e);
+                    sleep();
+                }
+            }
+        }
+    }
+
+    /* blocks for the first notification, then lingers briefly for more */
+    private List<String> receive(PGConnection pg) throws SQLException {
+        List<String> payloads = new ArrayList<>();
+        PGNotification[] first = pg.getNotifications((int) TimeUnit.SECONDS.toMillis(10));
+        add(payloads, first);
+        long until = System.currentTimeMillis() + lingerMillis;
+        while (!payloads.isEmpty() && payloads.size() < maxBatch) {
+            long left = until - System.currentTimeMillis();
+            if (left <= 0) {
+                break;
+            }
+            PGNotification[] more = pg.getNotifications((int) left);
+            if (more == null || more.length == 0) {
+                break;
+            }
+            add(payloads, more);
+        }
+        return payloads;
+    }
+
+    private static void add(List<String> payloads, PGNotification[] notifications) {
+        if (notifications != null) {
+            for (PGNotification n : notifications) {
+                payloads.add(n.getParameter());
+            }
+        }
+    }
+
+    private void notify(String change) {
+        try {
+            jdbc.query("select pg_notify(?, ?)", rs -> null, channel, node + ":" + change);
+            SENT.increment();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not notify the cluster of {}", change, e);
+        }
+    }
+
+    /**
+     * Loads the new and edited messages of the other nodes' notifications
+     * with one query and publishes them as remote events, the new ones in
+     * id order, then the deletions and the read markers.
+     */
+    void dispatch(List<String> payloads) {
+        Set<Integer> created = new LinkedHashSet<>();
+        Set<Integer> updated = new LinkedHashSet<>();
+        List<MessageDeletedEvent> deleted = new ArrayList<>();
+        List<RoomReadEvent> read = new ArrayList<>();
+        for (String payload : payloads) {
+            String[] parts = payload.split(":", -1);
+            if (parts.length < 4 || node.equals(parts[0])) {
+                continue;
+            }
+            try {
+                int id = Integer.parseInt(parts[3]);
+                if (CREATED.equals(parts[1])) {
+                    created.add(id);
+                } else if (UPDATED.equals(parts[1])) {
+                    updated.add(id);
+                } else if (DELETED.equals(parts[1])) {
+                    deleted.add(new MessageDeletedEvent(parts[2].isEmpty() ? null : Integer.valueOf(parts[2]), id,
+                            parts.length < 5 || parts[4].isEmpty() ? null : Integer.valueOf(parts[4]), true));
+                } else if (READ.equals(parts[1]) && parts.length == 5) {
+                    read.add(new RoomReadEvent(Integer.parseInt(parts[4]), Integer.parseInt(parts[2]), id, true));
+                } else {
+                    LOG.debug("Ignoring notification {}", payload);
+                }
+            } catch (NumberFormatException e) {
+                LOG.debug("Ignoring notification {}", payload);
+            }
+        }
+        RECEIVED.increment(created.size() + updated.size() + deleted.size() + read.size());
+        deleted.forEach(event -> {
+            created.remove(event.getMessageId());
+            updated.remove(event.getMessageId());
+        });
+        if (!created.isEmpty() || !updated.isEmpty()) {
+            Set<Integer> ids = new LinkedHashSet<>(created);
+            ids.addAll(updated);
+            List<Message> found = tx.execute(status -> messages.findByIdIn(ids));
+            Set<Integer> missing = new HashSet<>(ids);
+            for (Message message : found) {
+                missing.remove(message.getId());
+                if (created.contains(message.getId())) {
+                    events.publishEvent(new MessageCreatedEvent(message, true));
+                }
+                if (updated.contains(message.getId())) {
+                    events.publishEvent(new MessageUpdatedEvent(message, true));
+                }
+            }
+            if (!missing.isEmpty()) {
+                LOG.warn("Messages {} of other nodes were not found", missing);
+            }
+        }
+        deleted.forEach(events::publishEvent);
+        read.forEach(events::publishEvent);
+    }
+
+    String getNode() {
+        return node;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(RECONNECT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.job4j.chat.service;
+
+/**
+ * Thrown when a queued message is not committed in time. The message is
+ * not lost, it may still be committed afterwards, so the outcome is unknown.
+ */
+public class CommitTimeoutException extends RuntimeException {
+    public CommitTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,10 @@
+package ru.job4j.chat.service;
+
+/**
+ * Thrown when the password hashing pool is saturated.
+ */
+public class HashingRejectedException extends RuntimeException {
+    public HashingRejectedException(String message) {
+        super(message);
+    }
+}
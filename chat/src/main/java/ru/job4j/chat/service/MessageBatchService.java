@@ -0,0 +1,111 @@
+package ru.job4j.chat.service;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.MessageShards;
+import ru.job4j.chat.repository.PersonRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Saves many messages of one room in a single transaction.
+ * Ids come from the pooled message sequence, so Hibernate sends the
+ * inserts as JDBC batches of {@code hibernate.jdbc.batch_size} rows.
+ * With sharding the batch goes to the room's shard as one JDBC batch.
+ */
+@Service
+public class MessageBatchService {
+    @PersistenceContext
+    private EntityManager em;
+
+    private final PersonRepository persons;
+    private final MessageRepository messages;
+    private final boolean sharded;
+    private final int batchSize;
+
+    public MessageBatchService(PersonRepository persons, MessageRepository messages,
+                               ObjectProvider<MessageShards> shards,
+                               @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+        this.persons = persons;
+        this.messages = messages;
+        this.sharded = shards.getIfAvailable() != null;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Saves the messages into the room and returns their ids in input order.
+     * Only {@code text}, {@code time} and {@code person.id} of the input are used.
+     *
+     * @throws IllegalArgumentException if a message has no author or the author does not exist
+     */
+    @Transactional
+    public List<Integer> saveAll(int roomId, List<Message> batch) {
+        Set<Integer> authors = batch.stream()
+                .map(m -> {
+                    if (m.getPerson() == null) {
+                        throw new IllegalArgumentException("Message without author");
+                    }
+                    return m.getPerson().getId();
+                })
+                .collect(Collectors.toSet());
+        if (!persons.findExistingIds(authors).containsAll(authors)) {
+            throw new IllegalArgumentException("Unknown author");
+        }
+        if (sharded) {
+            return saveSharded(roomId, batch);
+        }
+        List<Integer> ids = new ArrayList<>(batch.size());
+        Map<Integer, Person> refs = new HashMap<>();
+        Room room = null;
+        for (Message in : batch) {
+            if (room == null) {
+                room = em.getReference(Room.class, roomId);
+            }
+            Message m = Message.of(0, in.getText(),
+                    refs.computeIfAbsent(in.getPerson().getId(), id -> em.getReference(Person.class, id)));
+            if (in.getTime() != null) {
+                m.setTime(in.getTime());
+            }
+            m.setRoom(room);
+            em.persist(m);
+            ids.add(m.getId());
+            if (ids.size() % batchSize == 0) {
+                em.flush();
+                em.clear();
+                refs.clear();
+                room = null;
+            }
+        }
+        em.flush();
+        return ids;
+    }
+
+    private List<Integer> saveSharded(int roomId, List<Message> batch) {
+        Room room = new Room();
+        room.setId(roomId);
+        List<Message> saved = new ArrayList<>(batch.size());
+        for (Message in : batch) {
+            Message m = Message.of(0, in.getText(), Person.of(in.getPerson().getId(), null, null));
+            if (in.getTime() != null) {
+                m.setTime(in.getTime());
+            }
+            m.setRoom(room);
+            saved.add(m);
+        }
+        messages.saveAll(saved);
+        return saved.stream().map(Message::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,35 @@
+package ru.job4j.chat.service;
+
+import ru.job4j.chat.model.Message;
+
+/**
+ * Published after a message has been saved, on this node or, when
+ * {@link #isRemote()}, on another node of the cluster.
+ */
+public class MessageCreatedEvent {
+    private final Message message;
+    private final boolean remote;
+    /* set by MessageFrames, a race only serializes twice */
+    volatile MessageFrame frame;
+
+    public MessageCreatedEvent(Message message) {
+        this(message, false);
+    }
+
+    public MessageCreatedEvent(Message message, boolean remote) {
+        this.message = message;
+        this.remote = remote;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+
+    public int getRoomId() {
+        return message.getRoom().getId();
+    }
+}
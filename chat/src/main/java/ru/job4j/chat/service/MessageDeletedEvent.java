@@ -0,0 +1,48 @@
+package ru.job4j.chat.service;
+
+/**
+ * Published after a message has been deleted, on this node or, when
+ * {@link #isRemote()}, on another node of the cluster.
+ * The room and the author are {@code null} when the caller did not know them.
+ */
+public class MessageDeletedEvent {
+    private final Integer roomId;
+    private final int messageId;
+    private final Integer authorId;
+    private final boolean remote;
+
+    public MessageDeletedEvent(Integer roomId, int messageId) {
+        this(roomId, messageId, null, false);
+    }
+
+    public MessageDeletedEvent(Integer roomId, int messageId, Integer authorId) {
+        this(roomId, messageId, authorId, false);
+    }
+
+    public MessageDeletedEvent(Integer roomId, int messageId, boolean remote) {
+        this(roomId, messageId, null, remote);
+    }
+
+    public MessageDeletedEvent(Integer roomId, int messageId, Integer authorId, boolean remote) {
+        this.roomId = roomId;
+        this.messageId = messageId;
+        this.authorId = authorId;
+        this.remote = remote;
+    }
+
+    public Integer getRoomId() {
+        return roomId;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    public Integer getAuthorId() {
+        return authorId;
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+}
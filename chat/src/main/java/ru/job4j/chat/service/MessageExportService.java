@@ -0,0 +1,67 @@
+package ru.job4j.chat.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.repository.MessageRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the whole history of a room as a JSON array straight from a
+ * database cursor. Every message is detached once written, so neither
+ * the persistence context nor the heap grows with the size of the room.
+ */
+@Service
+public class MessageExportService {
+    /* generator buffer is pushed to the client every this many messages */
+    private static final int FLUSH_EVERY = 500;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final MessageRepository messages;
+    private final ObjectMapper mapper;
+    private final ObjectWriter writer;
+
+    public MessageExportService(MessageRepository messages, ObjectMapper mapper) {
+        this.messages = messages;
+        this.mapper = mapper;
+        this.writer = mapper.writerFor(Message.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Writes the messages of the room in id order, returns how many were written.
+     * The stream is not closed.
+     */
+    @Transactional(readOnly = true)
+    public long export(int roomId, OutputStream out) throws IOException {
+        long count = 0;
+        try (Stream<Message> rows = messages.streamByRoomId(roomId);
+             JsonGenerator json = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.writeStartArray();
+            Iterator<Message> it = rows.iterator();
+            while (it.hasNext()) {
+                Message m = it.next();
+                writer.writeValue(json, m);
+                em.detach(m);
+                if (++count % FLUSH_EVERY == 0) {
+                    json.flush();
+                }
+            }
+            json.writeEndArray();
+        }
+        return count;
+    }
+}
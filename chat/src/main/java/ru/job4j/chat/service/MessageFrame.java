@@ -0,0 +1,36 @@
+package ru.job4j.chat.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One message serialized to JSON, shared by every connection it is sent to.
+ * The bytes are never modified after construction.
+ */
+public final class MessageFrame {
+    private final int id;
+    private final byte[] json;
+
+    MessageFrame(int id, byte[] json) {
+        this.id = id;
+        this.json = json;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * The JSON itself, for writers that take an array; callers must not modify it.
+     */
+    public byte[] bytes() {
+        return json;
+    }
+
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(json).asReadOnlyBuffer();
+    }
+
+    public int size() {
+        return json.length;
+    }
+}
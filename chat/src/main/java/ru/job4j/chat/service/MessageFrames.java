@@ -0,0 +1,38 @@
+package ru.job4j.chat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.stereotype.Component;
+import ru.job4j.chat.model.Message;
+
+/**
+ * Serializes messages for the live subscribers. A new message is serialized
+ * once, by the first listener of its event, and the frame is kept on the
+ * event for the other ones.
+ */
+@Component
+public class MessageFrames {
+    private final ObjectWriter writer;
+
+    public MessageFrames(ObjectMapper mapper) {
+        this.writer = mapper.writerFor(Message.class);
+    }
+
+    public MessageFrame of(MessageCreatedEvent event) {
+        MessageFrame frame = event.frame;
+        if (frame == null) {
+            frame = of(event.getMessage());
+            event.frame = frame;
+        }
+        return frame;
+    }
+
+    public MessageFrame of(Message message) {
+        try {
+            return new MessageFrame(message.getId(), writer.writeValueAsBytes(message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize message " + message.getId(), e);
+        }
+    }
+}
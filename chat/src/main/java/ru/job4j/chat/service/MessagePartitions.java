@@ -0,0 +1,69 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the monthly partitions of {@code message} created
+ * {@code chat.partitions.months-ahead} months in advance, calling
+ * {@code create_message_partitions} of {@code db/008.sql} every
+ * {@code chat.partitions.check-ms}. The migration creates the first
+ * months itself, a row of a month still without a partition lands in
+ * {@code message_default} and is moved out when the month's partition
+ * is created.
+ */
+@Service
+public class MessagePartitions {
+    private static final Logger LOG = LoggerFactory.getLogger(MessagePartitions.class);
+
+    private final JdbcTemplate jdbc;
+    private final int monthsAhead;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "message-partitions");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public MessagePartitions(JdbcTemplate jdbc,
+                             @Value("${chat.partitions.months-ahead:3}") int monthsAhead,
+                             @Value("${chat.partitions.check-ms:21600000}") long checkMillis) {
+        this.jdbc = jdbc;
+        this.monthsAhead = monthsAhead;
+        this.scheduler.scheduleWithFixedDelay(this::check, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates the partitions missing up to {@code chat.partitions.months-ahead}
+     * months from now.
+     *
+     * @return the number of partitions created
+     */
+    public int createAhead() {
+        Integer created = jdbc.queryForObject("select create_message_partitions(?)", Integer.class, monthsAhead);
+        if (created != null && created > 0) {
+            LOG.info("Created {} message partitions", created);
+        }
+        return created == null ? 0 : created;
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void check() {
+        try {
+            createAhead();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not create the message partitions", e);
+        }
+    }
+}
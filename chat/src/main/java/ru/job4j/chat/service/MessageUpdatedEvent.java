@@ -0,0 +1,29 @@
+package ru.job4j.chat.service;
+
+import ru.job4j.chat.model.Message;
+
+/**
+ * Published after an existing message has been saved again, on this node
+ * or, when {@link #isRemote()}, on another node of the cluster.
+ */
+public class MessageUpdatedEvent {
+    private final Message message;
+    private final boolean remote;
+
+    public MessageUpdatedEvent(Message message) {
+        this(message, false);
+    }
+
+    public MessageUpdatedEvent(Message message, boolean remote) {
+        this.message = message;
+        this.remote = remote;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+}
@@ -0,0 +1,167 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.repository.MessageRepository;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Write path of the posted messages.
+ * By default every message is saved in its own transaction. With
+ * {@code chat.ingest.write-behind.enabled} the messages are queued and one
+ * writer thread commits them in groups of up to {@code max-batch}, waiting
+ * at most {@code linger-ms} for a group to fill. The caller still returns
+ * only after the commit of its group, and gives up after
+ * {@code commit-timeout-ms}, not knowing whether the message was saved. Messages still queued when the writer stops
+ * are failed.
+ */
+@Service
+public class MessageWriteQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(MessageWriteQueue.class);
+
+    private final MessageRepository messages;
+    private final TransactionTemplate tx;
+    private final boolean enabled;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final long offerTimeout;
+    private final long commitTimeout;
+    private final BlockingQueue<Pending> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public MessageWriteQueue(MessageRepository messages, TransactionTemplate tx,
+                             @Value("${chat.ingest.write-behind.enabled:false}") boolean enabled,
+                             @Value("${chat.ingest.write-behind.queue-capacity:10000}") int capacity,
+                             @Value("${chat.ingest.write-behind.max-batch:200}") int maxBatch,
+                             @Value("${chat.ingest.write-behind.linger-ms:5}") long lingerMs,
+                             @Value("${chat.ingest.write-behind.offer-timeout-ms:50}") long offerTimeout,
+                             @Value("${chat.ingest.write-behind.commit-timeout-ms:30000}") long commitTimeout) {
+        this.messages = messages;
+        this.tx = tx;
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.offerTimeout = offerTimeout;
+        this.commitTimeout = commitTimeout;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drain, "message-writer");
+        this.writer.setDaemon(true);
+        if (enabled) {
+            this.writer.start();
+        }
+    }
+
+    /**
+     * Saves the message and returns it with its id.
+     *
+     * @throws RejectedExecutionException if the queue stays full for {@code offer-timeout-ms}
+     *                                    or the writer stops before saving the message
+     * @throws CommitTimeoutException if the group is not committed within {@code commit-timeout-ms},
+     *                                the message may still be committed later
+     */
+    public Message save(Message message) {
+        if (!enabled) {
+            return messages.save(message);
+        }
+        Pending pending = new Pending(message);
+        try {
+            if (!running || !queue.offer(pending, offerTimeout, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("Message queue is full");
+            }
+            return pending.done.get(commitTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new CommitTimeoutException("Message not committed within " + commitTimeout + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        writer.interrupt();
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(p -> p.done.completeExceptionally(new RejectedExecutionException("Message queue is closed")));
+    }
+
+    private void drain() {
+        List<Pending> group = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (group.size() < maxBatch) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+                commit(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(group);
+                group.forEach(p -> p.done.completeExceptionally(e));
+                return;
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending> group) {
+        try {
+            tx.executeWithoutResult(status -> group.forEach(p -> p.saved = messages.save(p.message)));
+            group.forEach(p -> p.done.complete(p.saved));
+        } catch (RuntimeException e) {
+            LOG.warn("Group commit of {} messages failed, saving one by one", group.size(), e);
+            for (Pending p : group) {
+                p.message.setId(0);
+                try {
+                    p.done.complete(tx.execute(status -> messages.save(p.message)));
+                } catch (RuntimeException single) {
+                    p.done.completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    private static final class Pending {
+        private final Message message;
+        private final CompletableFuture<Message> done = new CompletableFuture<>();
+        private Message saved;
+
+        private Pending(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package ru.job4j.chat.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Who is online in which room, kept in memory only. A heartbeat keeps a
+ * person online in a room for {@code chat.presence.ttl-ms}.
+ *
+ * <p>Rooms are spread over {@code chat.presence.stripes} stripes, each with
+ * its own lock, so heartbeats to different rooms rarely wait for each other.
+ * Expiry uses a timing wheel of {@code chat.presence.tick-ms} slots: a
+ * heartbeat drops its session into the slot of its deadline, and every tick
+ * looks only at the sessions of one slot. A session that was refreshed
+ * meanwhile is skipped there and expires from its later slot.
+ */
+@Service
+public class PresenceRegistry {
+    private final Stripe[] stripes;
+    private final Queue<Session>[] wheel;
+    private final long ttlTicks;
+    private final AtomicInteger online = new AtomicInteger();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "presence-wheel");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile long tick;
+
+    @SuppressWarnings("unchecked")
+    public PresenceRegistry(@Value("${chat.presence.ttl-ms:30000}") long ttlMillis,
+                            @Value("${chat.presence.tick-ms:1000}") long tickMillis,
+                            @Value("${chat.presence.stripes:64}") int stripes) {
+        this.ttlTicks = Math.max(1, (ttlMillis + tickMillis - 1) / tickMillis);
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripes - 1) << 1)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        /* a deadline is at most ttlTicks + 1 ahead, so it never lands in the slot being expired */
+        this.wheel = new Queue[(int) ttlTicks + 2];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        Gauge.builder("chat.presence.sessions", online, AtomicInteger::get)
+                .description("Persons online, counted once per room")
+                .register(Metrics.globalRegistry);
+        ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Marks the person online in the room until the TTL passes.
+     */
+    public void heartbeat(int roomId, String login) {
+        long deadline = tick + ttlTicks + 1;
+        Stripe stripe = stripe(roomId);
+        Session session;
+        boolean moved;
+        stripe.lock.lock();
+        try {
+            Map<String, Session> sessions = stripe.rooms.computeIfAbsent(roomId, k -> new HashMap<>());
+            session = sessions.get(login);
+            if (session == null) {
+                session = new Session(roomId, login);
+                sessions.put(login, session);
+                online.incrementAndGet();
+            }
+            moved = session.deadline != deadline;
+            session.deadline = deadline;
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (moved) {
+            wheel[(int) (deadline % wheel.length)].add(session);
+        }
+    }
+
+    /**
+     * Takes the person offline in the room at once.
+     */
+    public void leave(int roomId, String login) {
+        Stripe stripe = stripe(roomId);
+        stripe.lock.lock();
+        try {
+            Map<String, Session> sessions = stripe.rooms.get(roomId);
+            if (sessions != null && sessions.remove(login) != null) {
+                online.decrementAndGet();
+                if (sessions.isEmpty()) {
+                    stripe.rooms.remove(roomId);
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Logins online in the room, sorted.
+     */
+    public List<String> online(int roomId) {
+        Stripe stripe = stripe(roomId);
+        List<String> result;
+        stripe.lock.lock();
+        try {
+            Map<String, Session> sessions = stripe.rooms.get(roomId);
+            if (sessions == null) {
+                return List.of();
+            }
+            result = new ArrayList<>(sessions.keySet());
+        } finally {
+            stripe.lock.unlock();
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    public int getOnline() {
+        return online.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Moves the wheel one slot and expires the sessions whose deadline it was.
+     */
+    void advance() {
+        long now = ++tick;
+        Queue<Session> slot = wheel[(int) (now % wheel.length)];
+        Session session;
+        while ((session = slot.poll()) != null) {
+            if (session.deadline <= now) {
+                expire(session, now);
+            }
+        }
+    }
+
+    private void expire(Session session, long now) {
+        Stripe stripe = stripe(session.roomId);
+        stripe.lock.lock();
+        try {
+            Map<String, Session> sessions = stripe.rooms.get(session.roomId);
+            /* checked again under the lock, a heartbeat may have just moved it */
+            if (sessions != null && session.deadline <= now && sessions.remove(session.login, session)) {
+                online.decrementAndGet();
+                if (sessions.isEmpty()) {
+                    stripe.rooms.remove(session.roomId);
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private Stripe stripe(int roomId) {
+        int h = roomId * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Integer, Map<String, Session>> rooms = new HashMap<>();
+    }
+
+    private static final class Session {
+        private final int roomId;
+        private final String login;
+        /* guarded by the stripe lock, read without it by the wheel */
+        private volatile long deadline;
+
+        private Session(int roomId, String login) {
+            this.roomId = roomId;
+            this.login = login;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ru.job4j.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Token buckets per principal, {@code ROLE_ADMIN} gets its own rate and
+ * burst, every other role the user ones.
+ *
+ * <p>A bucket is one {@link AtomicLong}, the time at which it will be full
+ * again, and taking a token is one compare-and-set on it. A bucket past
+ * that time holds no state a new one would not have, so full buckets are
+ * dropped by a sweep every {@code chat.ratelimit.sweep-ms}, and at once
+ * when there are more than {@code chat.ratelimit.max-buckets}.
+ */
+@Service
+public class RateLimiter {
+    public static final String ROLE_ADMIN = "ROLE_ADMIN";
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Limit user;
+    private final Limit admin;
+    private final int maxBuckets;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "rate-limit-sweep");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public RateLimiter(@Value("${chat.ratelimit.user.per-second:5}") double userRate,
+                       @Value("${chat.ratelimit.user.burst:20}") int userBurst,
+                       @Value("${chat.ratelimit.admin.per-second:50}") double adminRate,
+                       @Value("${chat.ratelimit.admin.burst:200}") int adminBurst,
+                       @Value("${chat.ratelimit.max-buckets:100000}") int maxBuckets,
+                       @Value("${chat.ratelimit.sweep-ms:60000}") long sweepMillis) {
+        this.user = new Limit("user", userRate, userBurst);
+        this.admin = new Limit("admin", adminRate, adminBurst);
+        this.maxBuckets = maxBuckets;
+        Gauge.builder("chat.ratelimit.buckets", buckets, Map::size)
+                .description("Principals with a partly used bucket")
+                .register(Metrics.globalRegistry);
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes one token of the principal.
+     *
+     * @param role the role of the principal, asked only when it has no bucket yet
+     * @return 0 when taken, otherwise the nanoseconds until a token is free
+     */
+    public long acquire(String principal, Supplier<String> role) {
+        return acquire(principal, role, 1);
+    }
+
+    /**
+     * Takes the tokens of the principal at once. More tokens than the burst
+     * are taken from a full bucket, which then refills for longer.
+     *
+     * @param role the role of the principal, asked only when it has no bucket yet
+     * @return 0 when taken, otherwise the nanoseconds until they are free
+     */
+    public long acquire(String principal, Supplier<String> role, int tokens) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(principal);
+        if (bucket == null) {
+            if (buckets.size() >= maxBuckets) {
+                sweep();
+            }
+            Limit limit = ROLE_ADMIN.equals(role.get()) ? admin : user;
+            bucket = buckets.computeIfAbsent(principal, k -> new Bucket(limit, now));
+        }
+        long wait = bucket.acquire(now, tokens);
+        if (wait > 0) {
+            bucket.limit.rejected.increment();
+        }
+        return wait;
+    }
+
+    public int getBuckets() {
+        return buckets.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    /* a principal racing with the removal may get one token more, never fewer */
+    void sweep() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.fullAt.get() - now <= 0);
+    }
+
+    private static final class Limit {
+        private final long interval;
+        private final long capacity;
+        private final Counter rejected;
+
+        private Limit(String role, double perSecond, int burst) {
+            this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+            this.capacity = interval * Math.max(1, burst);
+            this.rejected = Counter.builder("chat.ratelimit.rejected")
+                    .description("Requests refused by the rate limiter")
+                    .tag("role", role)
+                    .register(Metrics.globalRegistry);
+        }
+    }
+
+    /**
+     * The bucket is empty at {@code fullAt - capacity} and gains a token
+     * every {@code interval}; a token moves {@code fullAt} one interval on.
+     */
+    private static final class Bucket {
+        private final Limit limit;
+        private final AtomicLong fullAt;
+
+        private Bucket(Limit limit, long now) {
+            this.limit = limit;
+            this.fullAt = new AtomicLong(now);
+        }
+
+        private long acquire(long now, int tokens) {
+            while (true) {
+                long current = fullAt.get();
+                boolean full = current - now <= 0;
+                long base = full ? now : current;
+                long next = base + limit.interval * tokens;
+                long over = next - now - limit.capacity;
+                if (over > 0 && !full) {
+                    return over;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+    }
+}
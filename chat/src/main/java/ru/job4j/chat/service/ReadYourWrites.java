@@ -0,0 +1,34 @@
+package ru.job4j.chat.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Users who wrote within the last {@code chat.datasource.read-your-writes-ms}.
+ * Their read-only transactions go to the primary, so a replica that is
+ * behind cannot hide what they have just posted.
+ */
+@Component
+public class ReadYourWrites {
+    private final Cache<String, Boolean> writers;
+
+    public ReadYourWrites(@Value("${chat.datasource.read-your-writes-ms:5000}") long windowMillis,
+                          @Value("${chat.datasource.read-your-writes-users:100000}") long maxUsers) {
+        this.writers = Caffeine.newBuilder()
+                .expireAfterWrite(windowMillis, TimeUnit.MILLISECONDS)
+                .maximumSize(maxUsers)
+                .build();
+    }
+
+    public void wrote(String user) {
+        writers.put(user, Boolean.TRUE);
+    }
+
+    public boolean recentlyWrote(String user) {
+        return user != null && writers.getIfPresent(user) != null;
+    }
+}
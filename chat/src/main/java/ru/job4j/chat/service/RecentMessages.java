@@ -0,0 +1,266 @@
+package ru.job4j.chat.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.repository.MessageRepository;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The latest {@code chat.recent.capacity} messages of the active rooms.
+ * A room is loaded from the database on its first read and then kept up
+ * to date by the message events. At most {@code chat.recent.max-rooms}
+ * rooms are kept, the least recently read one is dropped first, and rooms
+ * not read for {@code chat.recent.idle-ms} are dropped by a periodic sweep.
+ * Hits and misses are exported as {@code chat.recent.gets}.
+ */
+@Service
+public class RecentMessages {
+    private final Map<Integer, RoomBuffer> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "recent-messages-sweep");
+        t.setDaemon(true);
+        return t;
+    });
+    private final MessageRepository messages;
+    private final int capacity;
+    private final int maxRooms;
+    private final long idleMillis;
+
+    public RecentMessages(MessageRepository messages,
+                          @Value("${chat.recent.capacity:100}") int capacity,
+                          @Value("${chat.recent.max-rooms:1000}") int maxRooms,
+                          @Value("${chat.recent.idle-ms:600000}") long idleMillis) {
+        this.messages = messages;
+        this.capacity = capacity;
+        this.maxRooms = maxRooms;
+        this.idleMillis = idleMillis;
+        FunctionCounter.builder("chat.recent.gets", hits, AtomicLong::get)
+                .description("Reads of the latest messages of a room")
+                .tag("result", "hit")
+                .register(Metrics.globalRegistry);
+        FunctionCounter.builder("chat.recent.gets", misses, AtomicLong::get)
+                .description("Reads of the latest messages of a room")
+                .tag("result", "miss")
+                .register(Metrics.globalRegistry);
+        Gauge.builder("chat.recent.rooms", rooms, Map::size)
+                .description("Rooms whose latest messages are kept")
+                .register(Metrics.globalRegistry);
+        long period = Math.max(1000, idleMillis / 4);
+        this.sweeper.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the latest {@code limit} messages of the room in ascending id
+     * order, or empty when {@code limit} exceeds the buffer capacity.
+     */
+    public Optional<List<Message>> latest(int roomId, int limit) {
+        if (limit > capacity) {
+            return Optional.empty();
+        }
+        RoomBuffer buffer = rooms.get(roomId);
+        if (buffer == null) {
+            buffer = rooms.computeIfAbsent(roomId, k -> new RoomBuffer(capacity));
+            evictOverflow();
+        }
+        List<Message> result = buffer.latest(limit);
+        if (result != null) {
+            hits.incrementAndGet();
+            return Optional.of(result);
+        }
+        misses.incrementAndGet();
+        List<Message> loaded = new ArrayList<>(
+                messages.findByRoomIdOrderByIdDesc(roomId, PageRequest.of(0, capacity)));
+        Collections.reverse(loaded);
+        buffer.warm(loaded);
+        return Optional.of(buffer.latest(limit));
+    }
+
+    @EventListener
+    public void onCreated(MessageCreatedEvent event) {
+        RoomBuffer buffer = rooms.get(event.getRoomId());
+        if (buffer != null) {
+            buffer.add(event.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onUpdated(MessageUpdatedEvent event) {
+        rooms.values().forEach(buffer -> buffer.replace(event.getMessage()));
+    }
+
+    @EventListener
+    public void onDeleted(MessageDeletedEvent event) {
+        if (event.getRoomId() != null) {
+            RoomBuffer buffer = rooms.get(event.getRoomId());
+            if (buffer != null) {
+                buffer.remove(event.getMessageId());
+            }
+        } else {
+            rooms.values().forEach(buffer -> buffer.remove(event.getMessageId()));
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getRooms() {
+        return rooms.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    void evictIdle() {
+        long border = System.currentTimeMillis() - idleMillis;
+        rooms.entrySet().removeIf(e -> e.getValue().lastRead < border);
+    }
+
+    private void evictOverflow() {
+        while (rooms.size() > maxRooms) {
+            rooms.entrySet().stream()
+                    .min(Comparator.comparingLong(e -> e.getValue().lastRead))
+                    .ifPresent(e -> rooms.remove(e.getKey(), e.getValue()));
+        }
+    }
+
+    /**
+     * Ring of the latest messages of one room, ordered by id.
+     * Until it is warmed it only collects the new messages, and reads miss.
+     */
+    static final class RoomBuffer {
+        private final Message[] ring;
+        private final Set<Integer> removedWhileCold = new HashSet<>();
+        private int head;
+        private int size;
+        private boolean warm;
+        private volatile long lastRead = System.currentTimeMillis();
+
+        RoomBuffer(int capacity) {
+            this.ring = new Message[capacity];
+        }
+
+        synchronized List<Message> latest(int limit) {
+            lastRead = System.currentTimeMillis();
+            if (!warm) {
+                return null;
+            }
+            int n = Math.min(limit, size);
+            List<Message> result = new ArrayList<>(n);
+            for (int i = size - n; i < size; i++) {
+                result.add(get(i));
+            }
+            return result;
+        }
+
+        synchronized void warm(List<Message> loaded) {
+            if (warm) {
+                return;
+            }
+            List<Message> merged = new ArrayList<>(loaded.size() + size);
+            int top = 0;
+            for (Message m : loaded) {
+                if (!removedWhileCold.contains(m.getId())) {
+                    merged.add(m);
+                    top = m.getId();
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                if (get(i).getId() > top) {
+                    merged.add(get(i));
+                }
+            }
+            head = 0;
+            size = 0;
+            merged.forEach(this::add);
+            removedWhileCold.clear();
+            warm = true;
+        }
+
+        /* posts may commit slightly out of id order, keep the ring sorted */
+        synchronized void add(Message message) {
+            for (int i = size - 1; i >= 0 && get(i).getId() >= message.getId(); i--) {
+                if (get(i).getId() == message.getId()) {
+                    return;
+                }
+            }
+            if (size == ring.length) {
+                if (message.getId() < get(0).getId()) {
+                    return;
+                }
+                head = (head + 1) % ring.length;
+                size--;
+            }
+            int i = size;
+            while (i > 0 && get(i - 1).getId() > message.getId()) {
+                set(i, get(i - 1));
+                i--;
+            }
+            set(i, message);
+            size++;
+        }
+
+        synchronized void replace(Message message) {
+            for (int i = 0; i < size; i++) {
+                if (get(i).getId() == message.getId()) {
+                    set(i, message);
+                }
+            }
+        }
+
+        synchronized void remove(int id) {
+            if (!warm) {
+                removedWhileCold.add(id);
+            }
+            for (int i = 0; i < size; i++) {
+                if (get(i).getId() == id) {
+                    for (int j = i; j < size - 1; j++) {
+                        set(j, get(j + 1));
+                    }
+                    size--;
+                    /* an older message has to come back from the database */
+                    if (warm && size == ring.length - 1) {
+                        warm = false;
+                    }
+                    return;
+                }
+            }
+        }
+
+        private Message get(int i) {
+            return ring[(head + i) % ring.length];
+        }
+
+        private void set(int i, Message message) {
+            ring[(head + i) % ring.length] = message;
+        }
+    }
+}
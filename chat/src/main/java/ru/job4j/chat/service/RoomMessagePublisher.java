@@ -0,0 +1,37 @@
+package ru.job4j.chat.service;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Pushes saved messages to the STOMP subscribers of {@code /topic/rooms/{id}}.
+ * The simple broker keeps the per-room subscriber registry in memory and
+ * hands the frames to the outbound channel pool, so the posting thread
+ * only pays for one lookup. The message is sent as its serialized frame,
+ * every subscriber gets the same payload and a session that falls behind
+ * is closed by the limits set in {@code WebSocketConfig}.
+ */
+@Service
+public class RoomMessagePublisher {
+    public static final String TOPIC_PREFIX = "/topic";
+    public static final String ROOM_TOPIC = TOPIC_PREFIX + "/rooms/";
+
+    private final SimpMessagingTemplate template;
+    private final MessageFrames frames;
+
+    public RoomMessagePublisher(SimpMessagingTemplate template, MessageFrames frames) {
+        this.template = template;
+        this.frames = frames;
+    }
+
+    @EventListener
+    public void onCreated(MessageCreatedEvent event) {
+        this.template.send(ROOM_TOPIC + event.getRoomId(), MessageBuilder.withPayload(this.frames.of(event).bytes())
+                .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON)
+                .build());
+    }
+}
@@ -0,0 +1,39 @@
+package ru.job4j.chat.service;
+
+/**
+ * Published after a person has marked a room read, on this node or, when
+ * {@link #isRemote()}, on another node of the cluster.
+ */
+public class RoomReadEvent {
+    private final int personId;
+    private final int roomId;
+    private final int upTo;
+    private final boolean remote;
+
+    public RoomReadEvent(int personId, int roomId, int upTo) {
+        this(personId, roomId, upTo, false);
+    }
+
+    public RoomReadEvent(int personId, int roomId, int upTo, boolean remote) {
+        this.personId = personId;
+        this.roomId = roomId;
+        this.upTo = upTo;
+        this.remote = remote;
+    }
+
+    public int getPersonId() {
+        return personId;
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public int getUpTo() {
+        return upTo;
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+}
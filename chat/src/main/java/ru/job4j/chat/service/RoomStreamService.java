@@ -0,0 +1,306 @@
+package ru.job4j.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.repository.MessageRepository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Server-Sent Events subscribers of the rooms.
+ * Emitters are asynchronous, so an open stream holds no servlet thread,
+ * and all of them share one heartbeat thread.
+ *
+ * <p>A new message is serialized once and the same frame is queued to
+ * every subscriber of the room; {@code chat.stream.writers} threads drain
+ * the queues, so the posting thread never writes to a socket. A subscriber
+ * whose queue of {@code chat.stream.queue} frames is full is disconnected,
+ * it resumes with {@code Last-Event-ID} and gets the missed messages from
+ * the database.
+ */
+@Service
+public class RoomStreamService {
+    private static final Logger LOG = LoggerFactory.getLogger(RoomStreamService.class);
+    private static final int REPLAY_PAGE = 500;
+    private static final MessageFrame PING = new MessageFrame(0, new byte[0]);
+    private static final Counter OVERFLOWS = Counter.builder("chat.stream.overflow")
+            .description("Event streams closed because the client did not keep up")
+            .register(Metrics.globalRegistry);
+
+    private final Map<Integer, Set<Subscriber>> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "sse-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService writers;
+    private final MessageRepository messages;
+    private final MessageFrames frames;
+    private final long timeout;
+    private final int queue;
+
+    public RoomStreamService(MessageRepository messages, MessageFrames frames,
+                             @Value("${chat.stream.timeout:1800000}") long timeout,
+                             @Value("${chat.stream.heartbeat:15000}") long heartbeatPeriod,
+                             @Value("${chat.stream.queue:256}") int queue,
+                             @Value("${chat.stream.writers:4}") int writers) {
+        this.messages = messages;
+        this.frames = frames;
+        this.timeout = timeout;
+        this.queue = queue;
+        AtomicInteger n = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writers, r -> {
+            Thread t = new Thread(r, "sse-writer-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.heartbeat.scheduleAtFixedRate(this::ping, heartbeatPeriod, heartbeatPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a stream of the room. When {@code lastEventId} is given the
+     * messages saved after it are replayed first, by a writer thread once
+     * the emitter is returned, so a long replay holds no servlet thread.
+     */
+    public SseEmitter subscribe(int roomId, Integer lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Subscriber subscriber = new Subscriber(emitter, lastEventId, queue);
+        Set<Subscriber> subscribers = rooms.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet());
+        subscribers.add(subscriber);
+        Runnable remove = () -> remove(roomId, subscriber);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        if (lastEventId == null) {
+            subscriber.live();
+            return emitter;
+        }
+        try {
+            writers.execute(() -> {
+                try {
+                    replay(roomId, subscriber);
+                } catch (RuntimeException e) {
+                    subscriber.fail(e);
+                }
+                subscriber.live();
+            });
+        } catch (RejectedExecutionException e) {
+            remove.run();
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    @EventListener
+    public void onCreated(MessageCreatedEvent event) {
+        Set<Subscriber> subscribers = rooms.get(event.getRoomId());
+        if (subscribers != null && !subscribers.isEmpty()) {
+            MessageFrame frame = frames.of(event);
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(frame);
+            }
+        }
+    }
+
+    public int subscribers(int roomId) {
+        Set<Subscriber> subscribers = rooms.get(roomId);
+        return subscribers == null ? 0 : subscribers.size();
+    }
+
+    @PreDestroy
+    public void close() {
+        heartbeat.shutdownNow();
+        writers.shutdownNow();
+        rooms.values().forEach(set -> set.forEach(s -> s.emitter.complete()));
+    }
+
+    private void replay(int roomId, Subscriber subscriber) {
+        List<Message> page;
+        do {
+            page = messages.findByRoomIdAndIdGreaterThanOrderByIdAsc(
+                    roomId, subscriber.replayedUpTo, PageRequest.of(0, REPLAY_PAGE));
+            page.forEach(m -> subscriber.replay(frames.of(m)));
+        } while (page.size() == REPLAY_PAGE && !subscriber.closed);
+    }
+
+    private void ping() {
+        for (Set<Subscriber> subscribers : rooms.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.ping();
+            }
+        }
+    }
+
+    private void remove(int roomId, Subscriber subscriber) {
+        subscriber.closed = true;
+        rooms.computeIfPresent(roomId, (k, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * One connection. Messages saved while the replay is still running are
+     * parked and queued after it, skipping the ids the replay already sent,
+     * so every id is delivered once. Ids are not committed in their order,
+     * a parked message older than the last one replayed is still sent.
+     * The replayed ids are dropped once the parked ones are queued.
+     * Only one writer drains the queue at a time.
+     */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final BlockingQueue<MessageFrame> pending;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final Set<Integer> replayed = ConcurrentHashMap.newKeySet();
+        private List<MessageFrame> parked = new ArrayList<>();
+        private volatile int replayedUpTo;
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter, Integer lastEventId, int capacity) {
+            this.emitter = emitter;
+            this.pending = new ArrayBlockingQueue<>(capacity);
+            this.replayedUpTo = lastEventId == null ? 0 : lastEventId;
+        }
+
+        /* on the replaying writer, before anything is queued and without the lock */
+        void replay(MessageFrame frame) {
+            if (write(frame)) {
+                replayed.add(frame.getId());
+                replayedUpTo = frame.getId();
+            }
+        }
+
+        void offer(MessageFrame frame) {
+            lock.lock();
+            try {
+                if (parked == null) {
+                    enqueue(frame);
+                } else if (parked.size() < queue) {
+                    parked.add(frame);
+                } else {
+                    overflow();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void live() {
+            lock.lock();
+            try {
+                List<MessageFrame> waiting = parked;
+                parked = null;
+                waiting.forEach(this::enqueue);
+                replayed.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /* a ping is only worth sending to an idle stream */
+        void ping() {
+            lock.lock();
+            try {
+                if (parked == null && pending.isEmpty()) {
+                    enqueue(PING);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void enqueue(MessageFrame frame) {
+            if (closed || (frame != PING && replayed.contains(frame.getId()))) {
+                return;
+            }
+            if (!pending.offer(frame)) {
+                overflow();
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            do {
+                MessageFrame frame;
+                while ((frame = pending.poll()) != null) {
+                    if (!(frame == PING ? writePing() : write(frame))) {
+                        pending.clear();
+                    }
+                }
+                draining.set(false);
+            } while (!pending.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        private boolean write(MessageFrame frame) {
+            if (closed) {
+                return false;
+            }
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(frame.getId()))
+                        .data(frame.bytes(), MediaType.APPLICATION_JSON));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                fail(e);
+                return false;
+            }
+        }
+
+        private boolean writePing() {
+            if (closed) {
+                return false;
+            }
+            try {
+                emitter.send(SseEmitter.event().comment("ping"));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                fail(e);
+                return false;
+            }
+        }
+
+        private void overflow() {
+            OVERFLOWS.increment();
+            fail(new IOException("Client is " + queue + " messages behind"));
+        }
+
+        private void fail(Exception e) {
+            LOG.debug("Closing event stream: {}", e.getMessage());
+            closed = true;
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import ru.job4j.chat.repository.MessageShards;
+
+import javax.annotation.PreDestroy;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Moves a room to another shard while the chat keeps serving it.
+ *
+ * <p>The rows are copied in id order, {@code chat.shards.move-batch} at a
+ * time. Each batch is copied under the write lock of the move, so writes to
+ * the room wait for it and edits reach both copies. With the last batch any
+ * row the id order missed is copied too and the room is placed on the
+ * target. The source rows are deleted {@code chat.shards.refresh-ms} later,
+ * once every node routes the room to the target, after copying whatever
+ * other nodes still wrote to the source meanwhile.
+ *
+ * <p>The ids copied are remembered for the whole move. A copied row gone
+ * from the target was deleted there and is not copied again, a copied row
+ * gone from the source was deleted by a node still routing to it and is
+ * deleted from the target as well.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.shards.urls")
+public class ShardRebalancer {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardRebalancer.class);
+    private static final String SELECT = "select id, text, time, person_id, room_id from message ";
+    private static final String INSERT = "insert into message(id, text, time, person_id, room_id) values (?, ?, ?, ?, ?)";
+    private static final RowMapper<Object[]> ROW = (rs, n) -> new Object[] {
+            rs.getInt(1), rs.getString(2), rs.getTimestamp(3), rs.getObject(4), rs.getObject(5)};
+
+    private final MessageShards shards;
+    private final int batch;
+    private final long graceMillis;
+    private final ExecutorService mover = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "shard-move");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ShardRebalancer(MessageShards shards,
+                           @Value("${chat.shards.move-batch:1000}") int batch,
+                           @Value("${chat.shards.refresh-ms:5000}") long graceMillis) {
+        this.shards = shards;
+        this.batch = batch;
+        this.graceMillis = graceMillis;
+    }
+
+    /**
+     * Moves the room and returns when its rows are gone from the old shard.
+     *
+     * @throws IllegalArgumentException if there is no such shard
+     * @throws IllegalStateException if the room is already being moved
+     */
+    public Moved move(int roomId, int target) {
+        try {
+            return start(roomId, target).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Starts moving the room on a background thread, one move at a time.
+     * The outcome is logged.
+     *
+     * @throws IllegalArgumentException if there is no such shard
+     * @throws IllegalStateException if the room is already being moved
+     */
+    public CompletableFuture<Moved> start(int roomId, int target) {
+        if (target < 0 || target >= shards.size()) {
+            throw new IllegalArgumentException("No shard " + target);
+        }
+        int source = shards.shardOf(roomId);
+        if (source == target) {
+            return CompletableFuture.completedFuture(new Moved(roomId, source, target, 0, 0));
+        }
+        MessageShards.Move move = shards.startMove(roomId, target);
+        CompletableFuture<Moved> moved;
+        try {
+            moved = CompletableFuture.supplyAsync(() -> copy(roomId, move), mover);
+        } catch (RejectedExecutionException e) {
+            shards.finishMove(roomId);
+            throw e;
+        }
+        return moved.whenComplete((m, e) -> {
+            if (e != null) {
+                LOG.error("Could not move room {} to shard {}", roomId, target, e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        mover.shutdownNow();
+    }
+
+    private Moved copy(int roomId, MessageShards.Move move) {
+        int target = move.getTarget();
+        JdbcTemplate from = shards.jdbc(move.getSource());
+        JdbcTemplate to = shards.jdbc(target);
+        Set<Integer> copied = new HashSet<>();
+        try {
+            /* leftovers of a move that failed half way */
+            to.update("delete from message where room_id = ?", roomId);
+            int after = Integer.MIN_VALUE;
+            boolean last = false;
+            while (!last) {
+                move.getLock().writeLock().lock();
+                try {
+                    List<Object[]> rows = from.query(SELECT + "where room_id = ? and id > ? order by id limit ?",
+                            ROW, roomId, after, batch);
+                    to.batchUpdate(INSERT, rows);
+                    for (Object[] row : rows) {
+                        copied.add((Integer) row[0]);
+                    }
+                    last = rows.size() < batch;
+                    if (last) {
+                        reconcile(from, to, roomId, copied);
+                        shards.place(roomId, target);
+                    } else {
+                        after = (int) rows.get(rows.size() - 1)[0];
+                    }
+                } finally {
+                    move.getLock().writeLock().unlock();
+                }
+            }
+        } finally {
+            shards.finishMove(roomId);
+        }
+        sleep(graceMillis);
+        reconcile(from, to, roomId, copied);
+        int deleted = delete(from, roomId);
+        LOG.info("Moved room {} from shard {} to shard {}: {} rows copied, {} deleted",
+                roomId, move.getSource(), target, copied.size(), deleted);
+        return new Moved(roomId, move.getSource(), target, copied.size(), deleted);
+    }
+
+    /*
+     * copies the rows of the source never copied before and deletes from
+     * the target the copied rows the source no longer has
+     */
+    private void reconcile(JdbcTemplate from, JdbcTemplate to, int roomId, Set<Integer> copied) {
+        String ids = "select id from message where room_id = ?";
+        Set<Integer> source = new HashSet<>(from.queryForList(ids, Integer.class, roomId));
+        List<Integer> missing = source.stream()
+                .filter(id -> !copied.contains(id))
+                .sorted()
+                .collect(Collectors.toList());
+        for (int i = 0; i < missing.size(); i += batch) {
+            Map<String, Object> params = Map.of("ids", missing.subList(i, Math.min(i + batch, missing.size())));
+            to.batchUpdate(INSERT, new NamedParameterJdbcTemplate(from).query(SELECT + "where id in (:ids)", params, ROW));
+        }
+        copied.addAll(missing);
+        List<Integer> gone = copied.stream()
+                .filter(id -> !source.contains(id))
+                .sorted()
+                .collect(Collectors.toList());
+        for (int i = 0; i < gone.size(); i += batch) {
+            new NamedParameterJdbcTemplate(to).update("delete from message where id in (:ids)",
+                    Map.of("ids", gone.subList(i, Math.min(i + batch, gone.size()))));
+        }
+    }
+
+    private int delete(JdbcTemplate from, int roomId) {
+        int deleted = 0;
+        List<Integer> ids;
+        do {
+            ids = from.queryForList("select id from message where room_id = ? limit ?", Integer.class, roomId, batch);
+            if (!ids.isEmpty()) {
+                deleted += new NamedParameterJdbcTemplate(from)
+                        .update("delete from message where id in (:ids)", Map.of("ids", ids));
+            }
+        } while (ids.size() == batch);
+        return deleted;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static final class Moved {
+        private final int roomId;
+        private final int source;
+        private final int target;
+        private final int copied;
+        private final int deleted;
+
+        public Moved(int roomId, int source, int target, int copied, int deleted) {
+            this.roomId = roomId;
+            this.source = source;
+            this.target = target;
+            this.copied = copied;
+            this.deleted = deleted;
+        }
+
+        public int getRoomId() {
+            return roomId;
+        }
+
+        public int getSource() {
+            return source;
+        }
+
+        public int getTarget() {
+            return target;
+        }
+
+        public int getCopied() {
+            return copied;
+        }
+
+        public int getDeleted() {
+            return deleted;
+        }
+    }
+}
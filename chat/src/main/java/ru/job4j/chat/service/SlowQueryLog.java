@@ -0,0 +1,253 @@
+package ru.job4j.chat.service;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Times every statement sent through the wrapped data source, so every
+ * repository query is covered. Statements slower than
+ * {@code chat.sql.slow.threshold-ms} are logged, with their bind values only
+ * if {@code chat.sql.slow.log-binds} is set as they hold message texts, and
+ * a sample of the slow selects is run again under
+ * {@code EXPLAIN (ANALYZE, BUFFERS)} on a background thread, in a read
+ * only transaction that is always rolled back, on the data source the
+ * statement ran on. Totals per
+ * statement shape are kept for {@link #top}.
+ */
+@Service
+public class SlowQueryLog implements QueryExecutionListener {
+    private static final Logger LOG = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    /* literals of plain statements, so they fall into one shape */
+    private static final Pattern LITERALS = Pattern.compile("'(?:[^']|'')*'|\\b\\d+\\b");
+    private static final Pattern SELECT = Pattern.compile("^\\s*select\\b", Pattern.CASE_INSENSITIVE);
+    private static final int MAX_BIND_LENGTH = 100;
+    private static final int EXPLAIN_TIMEOUT_SECONDS = 30;
+
+    private final long thresholdMillis;
+    private final double explainSample;
+    private final int maxShapes;
+    private final boolean logBinds;
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor explains = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(16), r -> {
+                Thread t = new Thread(r, "slow-query-explain");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.AbortPolicy());
+    private final Map<String, DataSource> targets = new ConcurrentHashMap<>();
+
+    public SlowQueryLog(@Value("${chat.sql.slow.threshold-ms:100}") long thresholdMillis,
+                        @Value("${chat.sql.slow.explain-sample:0.1}") double explainSample,
+                        @Value("${chat.sql.slow.max-shapes:1000}") int maxShapes,
+                        @Value("${chat.sql.slow.log-binds:false}") boolean logBinds) {
+        this.thresholdMillis = thresholdMillis;
+        this.explainSample = explainSample;
+        this.maxShapes = maxShapes;
+        this.logBinds = logBinds;
+    }
+
+    /**
+     * Returns a data source that reports to this log. The plans are taken
+     * on connections of the original one, the name tells it from the
+     * others wrapped.
+     */
+    public DataSource wrap(DataSource dataSource, String name) {
+        targets.put(name, dataSource);
+        return ProxyDataSourceBuilder.create(dataSource)
+                .name(name)
+                .listener(this)
+                .build();
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        long elapsed = execInfo.getElapsedTime();
+        for (QueryInfo query : queryInfoList) {
+            Shape shape = shapeOf(query.getQuery());
+            if (shape != null) {
+                shape.record(elapsed);
+            }
+            if (elapsed >= thresholdMillis) {
+                List<Object> binds = query.getParametersList().isEmpty()
+                        ? List.of() : binds(query.getParametersList().get(0));
+                LOG.warn("Slow query, {} ms{}: {} {}", elapsed, execInfo.isBatch() ? " (batch)" : "",
+                        query.getQuery(), logBinds ? binds : binds.size() + " binds");
+                DataSource target = targets.get(execInfo.getDataSourceName());
+                if (shape != null && target != null && shouldExplain(query.getQuery())) {
+                    explain(target, shape, query.getQuery(), binds);
+                }
+            }
+        }
+    }
+
+    /**
+     * The slowest statement shapes by their worst time.
+     */
+    public List<Shape> top(int limit) {
+        return shapes.values().stream()
+                .sorted(Comparator.comparingLong(Shape::getMaxMillis).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @PreDestroy
+    public void close() {
+        explains.shutdownNow();
+    }
+
+    boolean shouldExplain(String sql) {
+        /* EXPLAIN ANALYZE executes the statement, writes must not run twice */
+        return SELECT.matcher(sql).find()
+                && ThreadLocalRandom.current().nextDouble() < explainSample;
+    }
+
+    private Shape shapeOf(String sql) {
+        String key = LITERALS.matcher(sql).replaceAll("?");
+        Shape shape = shapes.get(key);
+        if (shape == null && shapes.size() < maxShapes) {
+            shape = shapes.computeIfAbsent(key, Shape::new);
+        }
+        return shape;
+    }
+
+    DataSource target(String name) {
+        return targets.get(name);
+    }
+
+    private void explain(DataSource target, Shape shape, String sql, List<Object> binds) {
+        try {
+            explains.execute(() -> {
+                try (Connection cn = target.getConnection()) {
+                    if (!"PostgreSQL".equals(cn.getMetaData().getDatabaseProductName())) {
+                        return;
+                    }
+                    /* a select can still write through a function, in a read only transaction it fails instead */
+                    cn.setAutoCommit(false);
+                    cn.setReadOnly(true);
+                    try (PreparedStatement ps = cn.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + sql)) {
+                        ps.setQueryTimeout(EXPLAIN_TIMEOUT_SECONDS);
+                        for (int i = 0; i < binds.size(); i++) {
+                            ps.setObject(i + 1, binds.get(i));
+                        }
+                        StringBuilder plan = new StringBuilder();
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                plan.append(rs.getString(1)).append('\n');
+                            }
+                        }
+                        shape.plan = plan.toString();
+                        LOG.warn("Plan of slow query {}:\n{}", sql, plan);
+                    } finally {
+                        cn.rollback();
+                    }
+                } catch (SQLException e) {
+                    LOG.debug("Could not explain {}", sql, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Explain queue is full, skipped {}", sql);
+        }
+    }
+
+    private static List<Object> binds(List<ParameterSetOperation> operations) {
+        List<Object> result = new ArrayList<>(operations.size());
+        for (ParameterSetOperation op : operations) {
+            Object[] args = op.getArgs();
+            if (!(args[0] instanceof Integer)) {
+                continue;
+            }
+            int index = (Integer) args[0];
+            while (result.size() < index) {
+                result.add(null);
+            }
+            Object value = "setNull".equals(op.getMethod().getName()) || args.length < 2 ? null : args[1];
+            if (value instanceof String && ((String) value).length() > MAX_BIND_LENGTH) {
+                value = ((String) value).substring(0, MAX_BIND_LENGTH) + "...";
+            }
+            result.set(index - 1, value);
+        }
+        return result;
+    }
+
+    /**
+     * Totals of one statement shape, literals replaced by {@code ?}.
+     */
+    public static final class Shape {
+        private final String sql;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final LongAccumulator maxMillis = new LongAccumulator(Math::max, 0);
+        private volatile String plan;
+
+        private Shape(String sql) {
+            this.sql = sql;
+        }
+
+        private void record(long millis) {
+            count.increment();
+            totalMillis.add(millis);
+            maxMillis.accumulate(millis);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalMillis() {
+            return totalMillis.sum();
+        }
+
+        public long getMaxMillis() {
+            return maxMillis.get();
+        }
+
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) totalMillis.sum() / n;
+        }
+
+        /**
+         * The last captured plan, or {@code null}.
+         */
+        public String getPlan() {
+            return plan;
+        }
+    }
+}
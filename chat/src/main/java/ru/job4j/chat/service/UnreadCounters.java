@@ -0,0 +1,238 @@
+package ru.job4j.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.ReadMarker;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.ReadMarkerRepository;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Unread counts per person and room, kept in memory and written to
+ * {@code read_marker} every {@code chat.unread.flush-ms}.
+ *
+ * <p>A person follows a room once they post to it or mark it read. Every
+ * new message increments the counters of the other followers, posting or
+ * marking read resets one, so listing the counts touches no table. The
+ * counters are {@link LongAdder}s, posts to a busy room increment them
+ * from many threads without contending on one cell. A room is loaded,
+ * with the id of its newest message, on its first message or marker, and
+ * a person on their first listing.
+ */
+@Service
+public class UnreadCounters {
+    private static final Logger LOG = LoggerFactory.getLogger(UnreadCounters.class);
+
+    private final Map<Integer, RoomCounters> rooms = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> followed = new ConcurrentHashMap<>();
+    private final Set<Integer> loadedPersons = ConcurrentHashMap.newKeySet();
+    private final Queue<Counter> dirty = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "unread-flush");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ReadMarkerRepository markers;
+    private final MessageRepository messages;
+
+    public UnreadCounters(ReadMarkerRepository markers, MessageRepository messages,
+                          @Value("${chat.unread.flush-ms:5000}") long flushMillis) {
+        this.markers = markers;
+        this.messages = messages;
+        this.flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Unread counts of the rooms the person follows, by room id.
+     */
+    public Map<Integer, Long> unread(int personId) {
+        loadPerson(personId);
+        Map<Integer, Long> result = new TreeMap<>();
+        for (int roomId : followed.getOrDefault(personId, Set.of())) {
+            Counter counter = rooms.get(roomId).counters.get(personId);
+            result.put(roomId, Math.max(0, counter.unread.sum()));
+        }
+        return result;
+    }
+
+    /**
+     * Marks the room read up to the message, the person follows the room
+     * from now on. Marking an older message than before is ignored, an id
+     * past the newest message of the room marks the newest.
+     *
+     * @return the unread count left
+     */
+    public long markRead(int personId, int roomId, int markId) {
+        RoomCounters room = loadRoom(roomId);
+        /* a marker past the newest would hide the messages still to come */
+        int upTo = Math.min(markId, room.newest.get());
+        Counter counter = room.counter(personId, roomId, 0, 0);
+        follow(personId, roomId);
+        if (counter.lastReadId.accumulateAndGet(upTo, Math::max) != upTo) {
+            return Math.max(0, counter.unread.sum());
+        }
+        /* only a marker short of the newest message needs the database */
+        long left = upTo >= room.newest.get() ? 0 : messages.countByRoomIdAndIdGreaterThan(roomId, upTo);
+        counter.unread.reset();
+        counter.unread.add(left);
+        changed(counter);
+        return left;
+    }
+
+    @EventListener
+    public void onCreated(MessageCreatedEvent event) {
+        Message message = event.getMessage();
+        RoomCounters room = loadRoom(event.getRoomId());
+        room.newest.accumulateAndGet(message.getId(), Math::max);
+        Integer author = message.getPerson() != null ? message.getPerson().getId() : null;
+        if (author != null) {
+            Counter own = room.counter(author, event.getRoomId(), 0, 0);
+            follow(author, event.getRoomId());
+            /* posting reads the room */
+            if (own.lastReadId.accumulateAndGet(message.getId(), Math::max) == message.getId()) {
+                own.unread.reset();
+            }
+            changed(own);
+        }
+        for (Counter counter : room.counters.values()) {
+            if (!counter.isPerson(author) && message.getId() > counter.lastReadId.get()) {
+                counter.unread.increment();
+                changed(counter);
+            }
+        }
+    }
+
+    /* a local marker has been counted by markRead already */
+    @EventListener
+    public void onRead(RoomReadEvent event) {
+        if (event.isRemote()) {
+            markRead(event.getPersonId(), event.getRoomId(), event.getUpTo());
+        }
+    }
+
+    /* the publishers look the room up before deleting, a deletion without one counted nowhere */
+    @EventListener
+    public void onDeleted(MessageDeletedEvent event) {
+        RoomCounters room = event.getRoomId() != null ? rooms.get(event.getRoomId()) : null;
+        if (room == null) {
+            return;
+        }
+        for (Counter counter : room.counters.values()) {
+            if (!counter.isPerson(event.getAuthorId())
+                    && event.getMessageId() > counter.lastReadId.get() && counter.unread.sum() > 0) {
+                counter.unread.decrement();
+                changed(counter);
+            }
+        }
+    }
+
+    /**
+     * Writes the changed counters. A counter changed again while it is
+     * being written is queued once more and goes out with the next flush.
+     */
+    public void flush() {
+        Counter counter;
+        while ((counter = dirty.poll()) != null) {
+            counter.dirty.set(false);
+            try {
+                long unread = Math.max(0, counter.unread.sum());
+                if (markers.update(counter.personId, counter.roomId, counter.lastReadId.get(), unread) == 0) {
+                    markers.save(ReadMarker.of(counter.personId, counter.roomId, counter.lastReadId.get(), unread));
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Could not write unread counters, retrying with the next flush", e);
+                changed(counter);
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    private RoomCounters loadRoom(int roomId) {
+        RoomCounters room = rooms.computeIfAbsent(roomId, k -> new RoomCounters());
+        if (!room.loaded) {
+            /* a concurrent load only repeats the queries, rows never replace live counters */
+            messages.findByRoomIdOrderByIdDesc(roomId, PageRequest.of(0, 1))
+                    .forEach(m -> room.newest.accumulateAndGet(m.getId(), Math::max));
+            for (ReadMarker m : markers.findByRoomId(roomId)) {
+                room.counter(m.getPersonId(), roomId, m.getLastReadId(), m.getUnread());
+                follow(m.getPersonId(), roomId);
+            }
+            room.loaded = true;
+        }
+        return room;
+    }
+
+    private void loadPerson(int personId) {
+        if (!loadedPersons.contains(personId)) {
+            for (ReadMarker m : markers.findByPersonId(personId)) {
+                rooms.computeIfAbsent(m.getRoomId(), k -> new RoomCounters())
+                        .counter(personId, m.getRoomId(), m.getLastReadId(), m.getUnread());
+                follow(personId, m.getRoomId());
+            }
+            loadedPersons.add(personId);
+        }
+    }
+
+    private void follow(int personId, int roomId) {
+        followed.computeIfAbsent(personId, k -> ConcurrentHashMap.newKeySet()).add(roomId);
+    }
+
+    private void changed(Counter counter) {
+        if (counter.dirty.compareAndSet(false, true)) {
+            dirty.add(counter);
+        }
+    }
+
+    private static final class RoomCounters {
+        private final Map<Integer, Counter> counters = new ConcurrentHashMap<>();
+        private final AtomicInteger newest = new AtomicInteger();
+        private volatile boolean loaded;
+
+        private Counter counter(int personId, int roomId, int lastReadId, long unread) {
+            return counters.computeIfAbsent(personId, k -> new Counter(personId, roomId, lastReadId, unread));
+        }
+    }
+
+    private static final class Counter {
+        private final int personId;
+        private final int roomId;
+        private final AtomicInteger lastReadId;
+        private final LongAdder unread = new LongAdder();
+        private final AtomicBoolean dirty = new AtomicBoolean();
+
+        private Counter(int personId, int roomId, int lastReadId, long unread) {
+            this.personId = personId;
+            this.roomId = roomId;
+            this.lastReadId = new AtomicInteger(lastReadId);
+            this.unread.add(unread);
+        }
+
+        private boolean isPerson(Integer id) {
+            return id != null && id == personId;
+        }
+    }
+}
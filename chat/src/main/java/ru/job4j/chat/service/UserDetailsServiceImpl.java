@@ -5,6 +5,7 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.job4j.chat.model.Person;
 import ru.job4j.chat.repository.PersonRepository;
 
@@ -19,7 +20,9 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         this.users = users;
     }
 
+    /* read-write, a login right after the sign-up must not go to a lagging replica */
     @Override
+    @Transactional
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         Person user = users.findPersonByLogin(username);
         if (user == null) {
@@ -0,0 +1 @@
+create index message_room_id_id_idx on message (room_id, id);
@@ -0,0 +1,10 @@
+create table read_marker
+(
+    person_id    int not null,
+    room_id      int not null,
+    last_read_id int not null,
+    unread       bigint not null,
+    primary key (person_id, room_id)
+);
+
+create index read_marker_room_id_idx on read_marker (room_id);
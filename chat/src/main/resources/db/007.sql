@@ -0,0 +1,5 @@
+create table room_shard
+(
+    room_id int primary key,
+    shard   int not null
+);
@@ -0,0 +1,65 @@
+--liquibase formatted sql
+--changeset chat:008 splitStatements:false
+
+-- message becomes partitioned by month of time, ids keep coming from message_id_seq
+alter table message rename to message_old;
+alter index message_room_id_id_idx rename to message_old_room_id_id_idx;
+alter sequence message_id_seq owned by none;
+
+create table message
+(
+    id        int       not null default nextval('message_id_seq'),
+    text      text,
+    time      timestamp not null default now(),
+    person_id int,
+    room_id   int,
+    primary key (id, time)
+) partition by range (time);
+
+-- rows of a month without a partition yet
+create table message_default partition of message default;
+
+-- created on every partition, the BRIN index is a few pages per month of append-only rows
+create index message_time_brin_idx on message using brin (time);
+create index message_room_id_id_idx on message (room_id, id);
+
+-- creates the missing monthly partitions from the month of since up to months_ahead months from now
+create function create_message_partitions(months_ahead int, since timestamp default now())
+    returns int
+    language plpgsql
+as
+$$
+declare
+    starts  date := date_trunc('month', since)::date;
+    until   date := (date_trunc('month', now()) + make_interval(months => months_ahead))::date;
+    ends    date;
+    part    text;
+    created int  := 0;
+begin
+    while starts <= until
+        loop
+            ends := (starts + interval '1 month')::date;
+            part := 'message_' || to_char(starts, 'YYYY_MM');
+            if to_regclass(part) is null then
+                -- the month's rows already in the default partition move into the new one
+                execute format('create table %I (like message including defaults)', part);
+                execute format('with moved as (delete from message_default where time >= %L and time < %L returning *) '
+                                   || 'insert into %I select * from moved', starts, ends, part);
+                execute format('alter table message attach partition %I for values from (%L) to (%L)',
+                               part, starts, ends);
+                created := created + 1;
+            end if;
+            starts := ends;
+        end loop;
+    return created;
+end;
+$$;
+
+select create_message_partitions(3, coalesce((select min(time) from message_old), now()));
+
+insert into message (id, text, time, person_id, room_id)
+select id, text, coalesce(time, now()), person_id, room_id
+from message_old;
+
+drop table message_old;
+alter sequence message_id_seq owned by message.id;
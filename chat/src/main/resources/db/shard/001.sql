@@ -0,0 +1,12 @@
+create table message
+(
+    id        int primary key,
+    text      text,
+    time      timestamp,
+    person_id int,
+    room_id   int
+);
+
+create index message_room_id_id_idx on message (room_id, id);
+create index message_time_id_idx on message (time, id);
+create sequence message_shard_seq increment by 50;
@@ -0,0 +1,58 @@
+package ru.job4j.chat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.job4j.chat.service.ReadYourWrites;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class ReplicaRoutingDataSourceTest {
+    private final ReadYourWrites writes = new ReadYourWrites(60000, 100);
+    private final ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(
+            mock(DataSource.class), List.of(mock(DataSource.class), mock(DataSource.class)), writes);
+
+    @AfterEach
+    public void reset() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void whenReadWriteThenPrimary() {
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void whenReadOnlyThenReplicasInTurn() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals(0, routing.determineCurrentLookupKey());
+        assertEquals(1, routing.determineCurrentLookupKey());
+        assertEquals(0, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void whenUserJustWroteThenPrimary() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("user", null, List.of()));
+        assertEquals(0, routing.determineCurrentLookupKey());
+        writes.wrote("user");
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routing.determineCurrentLookupKey());
+        writes.wrote("other");
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void whenNoReplicasThenPrimary() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        ReplicaRoutingDataSource single = new ReplicaRoutingDataSource(mock(DataSource.class), List.of(), writes);
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, single.determineCurrentLookupKey());
+    }
+}
@@ -0,0 +1,61 @@
+package ru.job4j.chat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.job4j.chat.service.UserDetailsServiceImpl;
+
+import static java.util.Collections.emptyList;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.HEADER_STRING;
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.TOKEN_PREFIX;
+
+@SpringBootTest(classes = ChatApplication.class)
+@AutoConfigureMockMvc
+class WebSecurityTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PasswordEncoder encoder;
+
+    @MockBean
+    private UserDetailsServiceImpl users;
+
+    @Test
+    public void whenLoginThenTokenIssued() throws Exception {
+        when(users.loadUserByUsername("user")).thenReturn(new User("user", encoder.encode("secret"), emptyList()));
+        mockMvc.perform(post("/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"login\":\"user\",\"password\":\"secret\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HEADER_STRING, startsWith(TOKEN_PREFIX)));
+    }
+
+    @Test
+    public void whenWrongPasswordThenNoToken() throws Exception {
+        when(users.loadUserByUsername("user")).thenReturn(new User("user", encoder.encode("secret"), emptyList()));
+        mockMvc.perform(post("/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"login\":\"user\",\"password\":\"wrong\"}"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().doesNotExist(HEADER_STRING));
+    }
+
+    @Test
+    public void whenNoTokenThenForbidden() throws Exception {
+        mockMvc.perform(get("/rooms/"))
+                .andExpect(status().isForbidden());
+    }
+}
@@ -0,0 +1,125 @@
+package ru.job4j.chat.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import ru.job4j.chat.filter.RateLimitInterceptor;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.ReadMarkerRepository;
+import ru.job4j.chat.repository.RoomRepository;
+import ru.job4j.chat.service.CommitTimeoutException;
+import ru.job4j.chat.service.MessageBatchService;
+import ru.job4j.chat.service.MessageCreatedEvent;
+import ru.job4j.chat.service.MessageExportService;
+import ru.job4j.chat.service.MessageWriteQueue;
+import ru.job4j.chat.service.PresenceRegistry;
+import ru.job4j.chat.service.RecentMessages;
+import ru.job4j.chat.service.RoomStreamService;
+import ru.job4j.chat.service.UnreadCounters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The write paths with the real latest-page buffer and unread counters behind them.
+ */
+class RoomControllerBatchTest {
+    private final RoomRepository rooms = mock(RoomRepository.class);
+    private final MessageRepository messages = mock(MessageRepository.class);
+    private final PersonRepository persons = mock(PersonRepository.class);
+    private final MessageBatchService batches = mock(MessageBatchService.class);
+    private final MessageWriteQueue writes = mock(MessageWriteQueue.class);
+    private final RecentMessages recent = new RecentMessages(messages, 5, 2, 600000);
+    private final UnreadCounters unread = new UnreadCounters(mock(ReadMarkerRepository.class), messages, 600000);
+    private final RoomController controller = new RoomController(rooms, persons, messages,
+            event -> {
+                if (event instanceof MessageCreatedEvent) {
+                    recent.onCreated((MessageCreatedEvent) event);
+                    unread.onCreated((MessageCreatedEvent) event);
+                }
+            },
+            mock(RoomStreamService.class), batches, writes, recent,
+            mock(MessageExportService.class), unread, mock(PresenceRegistry.class),
+            mock(RateLimitInterceptor.class), 100);
+
+    @AfterEach
+    public void close() {
+        recent.close();
+        unread.close();
+    }
+
+    @Test
+    public void whenImportedIntoWarmRoomThenLatestPageHasThem() {
+        when(rooms.findById(1)).thenReturn(Optional.of(room()));
+        when(messages.findByRoomIdOrderByIdDesc(eq(1), any(Pageable.class))).thenReturn(messages(5, 1));
+        assertEquals(List.of(1, 2, 3, 4, 5), ids(controller.getMessagesByRoom(1, null, null, 5).getBody()));
+
+        when(batches.saveAll(eq(1), anyList())).thenReturn(List.of(6, 7));
+        when(messages.findByIdIn(List.of(6, 7))).thenReturn(messages(6, 7));
+        List<Message> batch = List.of(new Message("six"), new Message("seven"));
+        assertEquals(HttpStatus.CREATED, controller.createMessages(1, batch, null).getStatusCode());
+
+        assertEquals(List.of(3, 4, 5, 6, 7), ids(controller.getMessagesByRoom(1, null, null, 5).getBody()));
+    }
+
+    @Test
+    public void whenImportedThenCountedUnread() {
+        when(rooms.findById(1)).thenReturn(Optional.of(room()));
+        when(messages.findByRoomIdOrderByIdDesc(eq(1), any(Pageable.class))).thenReturn(messages(5, 5));
+        unread.markRead(2, 1, 5);
+
+        when(batches.saveAll(eq(1), anyList())).thenReturn(List.of(6, 7));
+        when(messages.findByIdIn(List.of(6, 7))).thenReturn(messages(6, 7));
+        controller.createMessages(1, List.of(new Message("six"), new Message("seven")), null);
+
+        assertEquals(Map.of(1, 2L), unread.unread(2));
+        when(messages.countByRoomIdAndIdGreaterThan(1, 6)).thenReturn(1L);
+        assertEquals(1, unread.markRead(2, 1, 6));
+    }
+
+    @Test
+    public void whenCommitTimesOutThenGatewayTimeoutAndNotPublished() {
+        when(rooms.findById(1)).thenReturn(Optional.of(room()));
+        when(persons.findById(1)).thenReturn(Optional.of(Person.of(1, "author", "author")));
+        when(writes.save(any(Message.class))).thenThrow(new CommitTimeoutException("slow", null));
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, controller.createMessage(1, 1, "late").getStatusCode());
+        assertEquals(Map.of(), unread.unread(1));
+    }
+
+    private static Room room() {
+        Room room = Room.of("imported");
+        room.setId(1);
+        return room;
+    }
+
+    /* the ids from first to last, counting down when first is larger */
+    private static List<Message> messages(int first, int last) {
+        List<Message> result = new ArrayList<>();
+        int step = first <= last ? 1 : -1;
+        for (int id = first; id != last + step; id += step) {
+            Message m = Message.of(id, "m" + id, Person.of(1, "author", "author"));
+            m.setRoom(room());
+            result.add(m);
+        }
+        return result;
+    }
+
+    private static List<Integer> ids(List<Message> messages) {
+        return messages.stream().map(Message::getId).collect(Collectors.toList());
+    }
+}
@@ -7,22 +7,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.job4j.chat.ChatApplication;
 import ru.job4j.chat.model.Message;
 import ru.job4j.chat.model.Person;
 import ru.job4j.chat.model.Room;
 
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collections;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
@@ -126,7 +131,7 @@ class RoomControllerTest {
         Message m2 = Message.of(2, "msg2", p);
         m1.setRoom(r);
         m2.setRoom(r);
-        when(rooms.getMessagesByRoom(anyInt())).thenReturn(new ResponseEntity<>(Arrays.asList(m1, m2), HttpStatus.OK));
+        when(rooms.getMessagesByRoom(anyInt(), isNull(), isNull(), anyInt())).thenReturn(new ResponseEntity<>(Arrays.asList(m1, m2), HttpStatus.OK));
         mockMvc.perform(get("/rooms/1/messages"))
                 .andDo(print())
                 .andExpect(status().isOk())
@@ -144,7 +149,76 @@ class RoomControllerTest {
                 .andExpect(jsonPath("$[1].person.id", is(1)))
                 .andExpect(jsonPath("$[1].person.login", is("user2")))
                 .andExpect(jsonPath("$[1].person.password", is("user")));
-        verify(rooms, times(1)).getMessagesByRoom(anyInt());
+        verify(rooms, times(1)).getMessagesByRoom(anyInt(), isNull(), isNull(), anyInt());
+        verifyNoMoreInteractions(rooms);
+    }
+
+    @Test
+    @WithMockUser
+    public void whenFindMessagesBeforeCursor() throws Exception {
+        Room r = Room.of("Room1");
+        r.setId(1);
+        Message m = Message.of(5, "msg5", Person.of(1, "user2", "user"));
+        m.setRoom(r);
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(RoomController.NEXT_CURSOR_HEADER, "5");
+        when(rooms.getMessagesByRoom(anyInt(), any(), isNull(), anyInt()))
+                .thenReturn(new ResponseEntity<>(Collections.singletonList(m), headers, HttpStatus.OK));
+        mockMvc.perform(get("/rooms/1/messages")
+                .param("before", "10")
+                .param("limit", "1"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string(RoomController.NEXT_CURSOR_HEADER, "5"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(5)));
+        verify(rooms, times(1)).getMessagesByRoom(1, 10, null, 1);
+        verifyNoMoreInteractions(rooms);
+    }
+
+    @Test
+    @WithMockUser
+    public void whenFindMessagesInTimeRange() throws Exception {
+        Message m = Message.of(7, "msg7", Person.of(1, "user2", "user"));
+        when(rooms.getMessagesByTime(anyInt(), any(), any(), anyInt(), anyInt()))
+                .thenReturn(new ResponseEntity<>(Collections.singletonList(m), HttpStatus.OK));
+        mockMvc.perform(get("/rooms/1/messages")
+                .param("from", "2024-01-01T00:00:00")
+                .param("to", "2024-02-01T00:00:00"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(7)));
+        verify(rooms, times(1)).getMessagesByTime(1, LocalDateTime.of(2024, 1, 1, 0, 0),
+                LocalDateTime.of(2024, 2, 1, 0, 0), 0, 100);
+        verifyNoMoreInteractions(rooms);
+    }
+
+    @Test
+    @WithMockUser
+    public void whenOnlyOneEndOfTimeRangeThenNotHistory() throws Exception {
+        when(rooms.getMessagesFrom(anyInt())).thenReturn(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        when(rooms.getMessagesTo(anyInt())).thenReturn(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        mockMvc.perform(get("/rooms/1/messages").param("from", "2024-01-01T00:00:00"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/rooms/1/messages").param("to", "2024-02-01T00:00:00"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        verify(rooms, times(1)).getMessagesFrom(1);
+        verify(rooms, times(1)).getMessagesTo(1);
+        verifyNoMoreInteractions(rooms);
+    }
+
+    @Test
+    @WithMockUser
+    public void whenStreamResumesFromLastEventId() throws Exception {
+        when(rooms.stream(anyInt(), any())).thenReturn(new ResponseEntity<>(new SseEmitter(), HttpStatus.OK));
+        mockMvc.perform(get("/rooms/1/stream")
+                .header("Last-Event-ID", "41"))
+                .andDo(print())
+                .andExpect(status().isOk());
+        verify(rooms, times(1)).stream(1, 41);
         verifyNoMoreInteractions(rooms);
     }
 
@@ -0,0 +1,54 @@
+package ru.job4j.chat.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.service.RateLimiter;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AdminInterceptorTest {
+    private final PersonRepository persons = mock(PersonRepository.class);
+    private final AdminInterceptor interceptor = new AdminInterceptor(persons);
+
+    @Test
+    public void whenAdminThenPassed() {
+        Person root = Person.of(2, "root", "pass");
+        root.setRole(Role.of(2, RateLimiter.ROLE_ADMIN));
+        when(persons.findPersonByLogin("root")).thenReturn(root);
+        assertTrue(interceptor.preHandle(request("root"), new MockHttpServletResponse(), null));
+    }
+
+    @Test
+    public void whenUserThen403() {
+        Person bob = Person.of(1, "bob", "pass");
+        bob.setRole(Role.of(1, "ROLE_USER"));
+        when(persons.findPersonByLogin("bob")).thenReturn(bob);
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(request("bob"), res, null));
+        assertEquals(403, res.getStatus());
+    }
+
+    @Test
+    public void whenAnonymousThen403() {
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(new MockHttpServletRequest(), res, null));
+        assertEquals(403, res.getStatus());
+    }
+
+    private static MockHttpServletRequest request(String login) {
+        MockHttpServletRequest req = new MockHttpServletRequest("GET", "/admin/queries/");
+        req.setUserPrincipal(new UsernamePasswordAuthenticationToken(login, null, new ArrayList<>()));
+        return req;
+    }
+}
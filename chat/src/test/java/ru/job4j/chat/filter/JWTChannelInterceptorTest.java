@@ -0,0 +1,75 @@
+package ru.job4j.chat.filter;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.ALGORITHM;
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.HEADER_STRING;
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.TOKEN_PREFIX;
+
+class JWTChannelInterceptorTest {
+    private final JWTChannelInterceptor interceptor = new JWTChannelInterceptor(new TokenVerifier(100));
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    @Test
+    public void whenConnectWithTokenThenUserSet() {
+        Message<?> connect = frame(StompCommand.CONNECT, TOKEN_PREFIX + token(ALGORITHM));
+        interceptor.preSend(connect, channel);
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(connect);
+        assertEquals("user", accessor.getUser().getName());
+    }
+
+    @Test
+    public void whenConnectWithoutTokenThenRejected() {
+        assertThrows(BadCredentialsException.class,
+                () -> interceptor.preSend(frame(StompCommand.CONNECT, null), channel));
+    }
+
+    @Test
+    public void whenConnectWithForeignTokenThenRejected() {
+        String token = TOKEN_PREFIX + token(Algorithm.HMAC512("other".getBytes()));
+        assertThrows(BadCredentialsException.class,
+                () -> interceptor.preSend(frame(StompCommand.CONNECT, token), channel));
+    }
+
+    @Test
+    public void whenSubscribeWithoutConnectThenRejected() {
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(frame(StompCommand.SUBSCRIBE, null), channel));
+    }
+
+    @Test
+    public void whenSendThenRejected() {
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(frame(StompCommand.SEND, TOKEN_PREFIX + token(ALGORITHM)), channel));
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String authorization) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        if (authorization != null) {
+            accessor.addNativeHeader(HEADER_STRING, authorization);
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static String token(Algorithm algorithm) {
+        return JWT.create()
+                .withSubject("user")
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+                .sign(algorithm);
+    }
+}
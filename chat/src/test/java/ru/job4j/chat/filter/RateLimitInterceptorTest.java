@@ -0,0 +1,74 @@
+package ru.job4j.chat.filter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.service.RateLimiter;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class RateLimitInterceptorTest {
+    private final RateLimiter limiter = new RateLimiter(1.0 / 3600, 1, 1.0 / 3600, 2, 100, 3_600_000);
+    private final PersonRepository persons = mock(PersonRepository.class);
+    private final RateLimitInterceptor interceptor = new RateLimitInterceptor(limiter, persons);
+
+    @AfterEach
+    public void close() {
+        limiter.close();
+    }
+
+    @Test
+    public void whenOverLimitThen429WithRetryAfter() {
+        when(persons.findPersonByLogin("bob")).thenReturn(Person.of(1, "bob", "pass"));
+        assertTrue(interceptor.preHandle(request("bob"), new MockHttpServletResponse(), null));
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(request("bob"), res, null));
+        assertEquals(429, res.getStatus());
+        assertEquals("3600", res.getHeader("Retry-After"));
+        verify(persons, times(1)).findPersonByLogin("bob");
+    }
+
+    @Test
+    public void whenAdminThenAdminLimit() {
+        Person root = Person.of(2, "root", "pass");
+        root.setRole(Role.of(2, RateLimiter.ROLE_ADMIN));
+        when(persons.findPersonByLogin("root")).thenReturn(root);
+        assertTrue(interceptor.preHandle(request("root"), new MockHttpServletResponse(), null));
+        assertTrue(interceptor.preHandle(request("root"), new MockHttpServletResponse(), null));
+        assertFalse(interceptor.preHandle(request("root"), new MockHttpServletResponse(), null));
+    }
+
+    @Test
+    public void whenNotPostThenPassed() {
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest req = request("bob");
+            req.setMethod("PUT");
+            assertTrue(interceptor.preHandle(req, new MockHttpServletResponse(), null));
+        }
+        verifyNoInteractions(persons);
+    }
+
+    @Test
+    public void whenAnonymousThenPassed() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), null));
+        }
+        verifyNoInteractions(persons);
+    }
+
+    private static MockHttpServletRequest request(String login) {
+        MockHttpServletRequest req = new MockHttpServletRequest("POST", "/messages/");
+        req.setUserPrincipal(new UsernamePasswordAuthenticationToken(login, null, new ArrayList<>()));
+        return req;
+    }
+}
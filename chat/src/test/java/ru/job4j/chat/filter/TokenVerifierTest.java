@@ -0,0 +1,49 @@
+package ru.job4j.chat.filter;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.ALGORITHM;
+import static ru.job4j.chat.filter.JWTAuthenticationFilter.TOKEN_PREFIX;
+
+class TokenVerifierTest {
+    private final TokenVerifier tokens = new TokenVerifier(100);
+
+    @Test
+    public void whenSameTokenTwiceThenSameUser() {
+        String token = token("user", 60_000, ALGORITHM);
+        assertEquals("user", tokens.authenticate(TOKEN_PREFIX + token).getPrincipal());
+        assertEquals("user", tokens.authenticate(TOKEN_PREFIX + token).getPrincipal());
+    }
+
+    @Test
+    public void whenForeignSignatureThenRejected() {
+        String token = token("user", 60_000, Algorithm.HMAC512("other".getBytes()));
+        assertThrows(JWTVerificationException.class, () -> tokens.verify(token));
+    }
+
+    @Test
+    public void whenExpiredThenRejected() {
+        String token = token("user", -1_000, ALGORITHM);
+        assertThrows(JWTVerificationException.class, () -> tokens.verify(token));
+    }
+
+    @Test
+    public void whenNoHeaderThenNoAuthentication() {
+        assertNull(tokens.authenticate(null));
+    }
+
+    private static String token(String user, long ttl, Algorithm algorithm) {
+        return JWT.create()
+                .withSubject(user)
+                .withExpiresAt(new Date(System.currentTimeMillis() + ttl))
+                .sign(algorithm);
+    }
+}
@@ -0,0 +1,111 @@
+package ru.job4j.chat.repository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.cache.CacheType;
+import org.springframework.boot.test.autoconfigure.core.AutoConfigureCache;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.cache.CacheManager;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureCache(cacheProvider = CacheType.CAFFEINE)
+class EntityCacheTest {
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private CacheManager caches;
+
+    @Autowired
+    private PersonRepository persons;
+
+    @Autowired
+    private RoleRepository roles;
+
+    @Autowired
+    private RoomRepository rooms;
+
+    @Autowired
+    private MessageRepository messages;
+
+    private Statistics statistics;
+
+    private int personId;
+
+    private int roomId;
+
+    @BeforeEach
+    public void init() {
+        caches.getCacheNames().forEach(name -> caches.getCache(name).clear());
+        Role role = em.persist(Role.of(0, "ROLE_USER"));
+        Person p = Person.of(0, "user", "password");
+        p.setRole(role);
+        personId = em.persist(p).getId();
+        roomId = em.persist(Room.of("room")).getId();
+        em.flush();
+        em.clear();
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * The lookups of RoomController.createMessage, once the caches and the
+     * id pool are warm.
+     */
+    @Test
+    public void whenPostInSteadyStateThenOnlyInsert() {
+        /* a fresh sequence takes two calls before the pooled optimizer has a block */
+        post();
+        post();
+        statistics.clear();
+        post();
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getEntityInsertCount());
+    }
+
+    @Test
+    public void whenPersonSavedThenEvicted() {
+        Person p = persons.findById(personId).get();
+        p.setLogin("renamed");
+        persons.save(p);
+        em.flush();
+        em.clear();
+        assertEquals("renamed", persons.findById(personId).get().getLogin());
+    }
+
+    @Test
+    public void whenRoleSavedThenPersonByLoginEvicted() {
+        int roleId = persons.findPersonByLogin("user").getRole().getId();
+        /* the cached person is detached, the save must not update its role in place */
+        em.clear();
+        roles.save(Role.of(roleId, "ROLE_ADMIN"));
+        em.flush();
+        em.clear();
+        assertEquals("ROLE_ADMIN", persons.findPersonByLogin("user").getRole().getName());
+    }
+
+    private void post() {
+        Message m = Message.of(0, "hello", persons.findById(personId).get());
+        m.setRoom(rooms.findById(roomId).get());
+        messages.save(m);
+        em.flush();
+        em.clear();
+    }
+}
@@ -0,0 +1,116 @@
+package ru.job4j.chat.repository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class MessageRepositoryTest {
+    private static final int MESSAGES = 1000;
+    private static final int AUTHORS = 50;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private MessageRepository messages;
+
+    private Statistics statistics;
+
+    private int roomId;
+
+    @BeforeEach
+    public void init() {
+        Role role = em.persist(Role.of(0, "ROLE_USER"));
+        Room room = em.persist(Room.of("big room"));
+        roomId = room.getId();
+        Person[] authors = new Person[AUTHORS];
+        for (int i = 0; i < AUTHORS; i++) {
+            Person p = Person.of(0, "user" + i, "password");
+            p.setRole(role);
+            authors[i] = em.persist(p);
+        }
+        for (int i = 0; i < MESSAGES; i++) {
+            Message m = Message.of(0, "msg" + i, authors[i % AUTHORS]);
+            m.setRoom(room);
+            em.persist(m);
+        }
+        em.flush();
+        em.clear();
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void whenGetByRoomIdThenOneStatement() {
+        List<Message> result = messages.getByRoomId(roomId);
+        assertEquals(MESSAGES, result.size());
+        assertEquals("user1", result.get(1).getPerson().getLogin());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void whenPageThroughRoomThenOneStatementPerPage() {
+        List<Message> latest = messages.findByRoomIdOrderByIdDesc(roomId, PageRequest.of(0, 100));
+        messages.findByRoomIdAndIdLessThanOrderByIdDesc(
+                roomId, latest.get(latest.size() - 1).getId(), PageRequest.of(0, 100));
+        assertEquals(100, latest.size());
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void whenTimeRangeThenOnlyMessagesInside() {
+        long now = System.currentTimeMillis();
+        List<Message> inside = messages.findByRoomIdAndTimeRange(roomId, new Timestamp(now - 3600000),
+                new Timestamp(now + 3600000), 0, PageRequest.of(0, 100));
+        List<Message> next = messages.findByRoomIdAndTimeRange(roomId, new Timestamp(now - 3600000),
+                new Timestamp(now + 3600000), inside.get(99).getId(), PageRequest.of(0, 100));
+        List<Message> before = messages.findByRoomIdAndTimeRange(roomId, new Timestamp(now - 7200000),
+                new Timestamp(now - 3600000), 0, PageRequest.of(0, 100));
+        assertEquals(100, inside.size());
+        assertEquals("msg100", next.get(0).getText());
+        assertEquals(0, before.size());
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void whenEditedThenTimeKept() {
+        Message message = messages.getByRoomId(roomId).get(0);
+        Timestamp posted = message.getTime();
+        message.setText("edited");
+        message.setTime(null);
+        messages.save(message);
+        em.flush();
+        em.clear();
+        Message edited = messages.findById(message.getId()).orElseThrow();
+        assertEquals("edited", edited.getText());
+        assertEquals(posted, edited.getTime());
+    }
+
+    @Test
+    public void whenFindAllThenOneStatement() {
+        assertEquals(MESSAGES, messages.findAll().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,44 @@
+package ru.job4j.chat.repository;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardRingTest {
+    private static final int ROOMS = 100000;
+
+    @Test
+    public void whenManyRoomsThenSpreadEvenly() {
+        ShardRing ring = new ShardRing(4, 128);
+        int[] rooms = new int[4];
+        for (int room = 1; room <= ROOMS; room++) {
+            rooms[ring.shardOf(room)]++;
+        }
+        for (int count : rooms) {
+            assertTrue(Math.abs(count - ROOMS / 4) < ROOMS / 4 / 5, "shard with " + count + " rooms");
+        }
+    }
+
+    @Test
+    public void whenShardAddedThenRoomsOnlyMoveToIt() {
+        ShardRing four = new ShardRing(4, 128);
+        ShardRing five = new ShardRing(5, 128);
+        int moved = 0;
+        for (int room = 1; room <= ROOMS; room++) {
+            int before = four.shardOf(room);
+            int after = five.shardOf(room);
+            if (before != after) {
+                assertEquals(4, after);
+                moved++;
+            }
+        }
+        assertTrue(Math.abs(moved - ROOMS / 5) < ROOMS / 5 / 5, moved + " rooms moved");
+    }
+
+    @Test
+    public void whenSameRoomThenSameShard() {
+        ShardRing ring = new ShardRing(3, 16);
+        assertEquals(ring.shardOf(42), new ShardRing(3, 16).shardOf(42));
+    }
+}
@@ -0,0 +1,191 @@
+package ru.job4j.chat.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ShardedMessageRepositoryTest {
+    private static final int SHARDS = 3;
+    private static final int ROOMS = 20;
+
+    private final MessageShards shards = shards(SHARDS);
+    private final ShardedMessageRepository messages =
+            new ShardedMessageRepository(shards, persons(), rooms());
+
+    @AfterEach
+    public void close() throws IOException {
+        shards.close();
+    }
+
+    @Test
+    public void whenSavedThenOnlyOnRoomShard() {
+        for (int room = 1; room <= ROOMS; room++) {
+            messages.save(message(room, "first", 0));
+            messages.save(message(room, "second", 0));
+        }
+        for (int room = 1; room <= ROOMS; room++) {
+            for (int shard = 0; shard < SHARDS; shard++) {
+                int expected = shard == shards.shardOf(room) ? 2 : 0;
+                assertEquals(expected, count(shard, room), "room " + room + " on shard " + shard);
+            }
+            List<Message> history = messages.getByRoomId(room);
+            assertEquals(List.of("first", "second"), texts(history));
+            assertEquals("user1", history.get(0).getPerson().getLogin());
+            assertEquals(room, history.get(0).getRoom().getId());
+        }
+    }
+
+    @Test
+    public void whenIdsFromSeveralShardsThenUnique() {
+        Set<Integer> ids = new HashSet<>();
+        for (int room = 1; room <= ROOMS; room++) {
+            for (int i = 0; i < MessageShards.ID_BLOCK + 1; i++) {
+                int id = messages.save(message(room, "m", 0)).getId();
+                assertEquals(shards.shardOf(room), id % MessageShards.MAX_SHARDS);
+                assertTrue(ids.add(id), "id " + id + " handed out twice");
+            }
+        }
+    }
+
+    @Test
+    public void whenFindAllThenShardsMergedByTime() {
+        for (int i = 0; i < 200; i++) {
+            messages.save(message(1 + i % ROOMS, "m" + i, 1000 - i));
+        }
+        List<Message> all = messages.findAll();
+        assertEquals(200, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getTime().compareTo(all.get(i).getTime()) <= 0);
+        }
+        assertEquals("m199", all.get(0).getText());
+        assertEquals(200, messages.count());
+    }
+
+    @Test
+    public void whenByIdThenEveryShardAsked() {
+        List<Integer> ids = new ArrayList<>();
+        for (int room = 1; room <= ROOMS; room++) {
+            ids.add(messages.save(message(room, "r" + room, 0)).getId());
+        }
+        assertEquals("r7", messages.findById(ids.get(6)).orElseThrow().getText());
+        int deleted = ids.get(6);
+        ids.sort(null);
+        assertEquals(ids, messages.findByIdIn(ids).stream().map(Message::getId).collect(Collectors.toList()));
+        messages.deleteById(deleted);
+        assertFalse(messages.existsById(deleted));
+        assertEquals(ROOMS - 1, messages.count());
+    }
+
+    @Test
+    public void whenUpdatedWithoutRoomThenFoundById() {
+        int room = 1;
+        while (shards.shardOf(room) == shards.shardOf(0)) {
+            room++;
+        }
+        Message message = messages.save(message(room, "before", 1_700_000_000_000L));
+        message.setRoom(null);
+        message.setText("after");
+        message.setTime(null);
+        messages.save(message);
+        assertEquals("after", messages.findById(message.getId()).orElseThrow().getText());
+        assertEquals(1_700_000_000_000L, messages.findById(message.getId()).orElseThrow().getTime().getTime());
+        assertEquals(room, messages.findById(message.getId()).orElseThrow().getRoom().getId());
+    }
+
+    @Test
+    public void whenPagedAndStreamedThenRoomShardOnly() {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            batch.add(message(5, "m" + i, 0));
+        }
+        messages.saveAll(batch);
+        List<Message> latest = messages.findByRoomIdOrderByIdDesc(5, PageRequest.of(0, 10));
+        assertEquals("m29", latest.get(0).getText());
+        List<Message> older = messages.findByRoomIdAndIdLessThanOrderByIdDesc(
+                5, latest.get(9).getId(), PageRequest.of(0, 10));
+        assertEquals("m19", older.get(0).getText());
+        assertEquals(10, messages.countByRoomIdAndIdGreaterThan(5, older.get(0).getId()));
+        try (Stream<Message> all = messages.streamByRoomId(5)) {
+            assertEquals(30, all.count());
+        }
+    }
+
+    private long count(int shard, int room) {
+        return shards.jdbc(shard).queryForObject(
+                "select count(*) from message where room_id = ?", Long.class, room);
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).collect(Collectors.toList());
+    }
+
+    static Message message(int roomId, String text, long time) {
+        Message m = Message.of(0, text, Person.of(1, "user1", "password"));
+        Room room = Room.of("room" + roomId);
+        room.setId(roomId);
+        m.setRoom(room);
+        if (time > 0) {
+            m.setTime(new Timestamp(time));
+        }
+        return m;
+    }
+
+    /* one in-memory database per shard, and one for the placements */
+    static MessageShards shards(int count) {
+        List<DataSource> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shards.add(database("db/shard/001.sql"));
+        }
+        return new MessageShards(shards, new JdbcTemplate(database("db/007.sql")), 64, 60000);
+    }
+
+    private static DataSource database(String schema) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource(schema)).execute(dataSource);
+        return dataSource;
+    }
+
+    static PersonRepository persons() {
+        PersonRepository persons = mock(PersonRepository.class);
+        when(persons.findById(anyInt())).thenAnswer(
+                inv -> Optional.of(Person.of(inv.getArgument(0), "user" + inv.getArgument(0), "password")));
+        return persons;
+    }
+
+    static RoomRepository rooms() {
+        RoomRepository rooms = mock(RoomRepository.class);
+        when(rooms.findById(anyInt())).thenAnswer(inv -> {
+            Room room = Room.of("room" + inv.getArgument(0));
+            room.setId(inv.getArgument(0));
+            return Optional.of(room);
+        });
+        return rooms;
+    }
+}
@@ -0,0 +1,108 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ClusterFanoutTest {
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final MessageRepository messages = mock(MessageRepository.class);
+    private final ApplicationEventPublisher events = mock(ApplicationEventPublisher.class);
+    private final ClusterFanout fanout = new ClusterFanout(jdbc, new DataSourceProperties(), messages,
+            new TransactionTemplate(mock(PlatformTransactionManager.class)), events, "chat_messages", 10, 500);
+
+    @AfterEach
+    public void close() {
+        fanout.close();
+    }
+
+    @Test
+    public void whenLocalMessageThenNotified() {
+        fanout.onCreated(new MessageCreatedEvent(message(3, 7)));
+        verify(jdbc).query(eq("select pg_notify(?, ?)"), ArgumentMatchers.<ResultSetExtractor<Object>>any(),
+                eq("chat_messages"), eq(fanout.getNode() + ":c:3:7"));
+    }
+
+    @Test
+    public void whenRemoteMessageThenNotSentOn() {
+        fanout.onCreated(new MessageCreatedEvent(message(3, 7), true));
+        verifyNoInteractions(jdbc);
+    }
+
+    @Test
+    public void whenBatchThenOneQueryAndRemoteEvents() {
+        when(messages.findByIdIn(Set.of(7, 8))).thenReturn(List.of(message(3, 7), message(4, 8)));
+        fanout.dispatch(List.of("other:c:3:7", fanout.getNode() + ":c:3:9", "other:c:4:8", "other:c:3:7", "garbage"));
+        verify(messages, times(1)).findByIdIn(Set.of(7, 8));
+        ArgumentCaptor<MessageCreatedEvent> published = ArgumentCaptor.forClass(MessageCreatedEvent.class);
+        verify(events, times(2)).publishEvent(published.capture());
+        assertEquals(7, published.getAllValues().get(0).getMessage().getId());
+        assertTrue(published.getAllValues().stream().allMatch(MessageCreatedEvent::isRemote));
+    }
+
+    @Test
+    public void whenChangesThenNotifiedByKind() {
+        fanout.onUpdated(new MessageUpdatedEvent(message(3, 7)));
+        fanout.onDeleted(new MessageDeletedEvent(null, 8));
+        fanout.onRead(new RoomReadEvent(1, 3, 7));
+        fanout.onDeleted(new MessageDeletedEvent(3, 9, true));
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(jdbc, times(3)).query(eq("select pg_notify(?, ?)"), ArgumentMatchers.<ResultSetExtractor<Object>>any(),
+                eq("chat_messages"), payloads.capture());
+        String node = fanout.getNode();
+        assertEquals(List.of(node + ":u:3:7", node + ":d::8:", node + ":r:3:7:1"), payloads.getAllValues());
+    }
+
+    @Test
+    public void whenRemoteChangesThenRemoteEvents() {
+        when(messages.findByIdIn(Set.of(7))).thenReturn(List.of(message(3, 7)));
+        fanout.dispatch(List.of("other:u:3:7", "other:d::8", "other:c:3:9", "other:d:3:9:2", "other:r:3:7:1"));
+        verify(messages, times(1)).findByIdIn(Set.of(7));
+        ArgumentCaptor<Object> published = ArgumentCaptor.forClass(Object.class);
+        verify(events, times(4)).publishEvent(published.capture());
+        List<Object> all = published.getAllValues();
+        assertTrue(((MessageUpdatedEvent) all.get(0)).isRemote());
+        assertNull(((MessageDeletedEvent) all.get(1)).getRoomId());
+        assertEquals(9, ((MessageDeletedEvent) all.get(2)).getMessageId());
+        assertEquals(2, ((MessageDeletedEvent) all.get(2)).getAuthorId());
+        RoomReadEvent read = (RoomReadEvent) all.get(3);
+        assertEquals(List.of(1, 3, 7, true), List.of(read.getPersonId(), read.getRoomId(), read.getUpTo(), read.isRemote()));
+    }
+
+    @Test
+    public void whenOnlyOwnNotificationsThenNoQuery() {
+        fanout.dispatch(List.of(fanout.getNode() + ":c:3:9"));
+        verify(messages, never()).findByIdIn(anyCollection());
+        verifyNoInteractions(events);
+    }
+
+    private static Message message(int room, int id) {
+        Room r = Room.of("room" + room);
+        r.setId(room);
+        Message m = Message.of(id, "msg" + id, Person.of(1, "user", "user"));
+        m.setRoom(r);
+        return m;
+    }
+}
@@ -0,0 +1,106 @@
+package ru.job4j.chat.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.MessageRepository;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+        "spring.jpa.properties.hibernate.order_inserts=true"
+})
+@Import(MessageBatchService.class)
+class MessageBatchServiceTest {
+    private static final int MESSAGES = 2000;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private MessageRepository messages;
+
+    @Autowired
+    private MessageBatchService batches;
+
+    private Statistics statistics;
+
+    private Person author;
+
+    private Room room;
+
+    @BeforeEach
+    public void init() {
+        Role role = em.persist(Role.of(0, "ROLE_USER"));
+        author = Person.of(0, "bridge", "password");
+        author.setRole(role);
+        author = em.persist(author);
+        room = em.persist(Room.of("bridged room"));
+        em.flush();
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    /**
+     * Compares the batch endpoint path with one save and commit per message,
+     * which is what N calls of createMessage do.
+     */
+    @Test
+    public void whenSaveAllThenFewerRoundTripsThanSingleSaves() {
+        for (int i = 0; i < MESSAGES; i++) {
+            Message m = Message.of(0, "single" + i, author);
+            m.setRoom(room);
+            messages.save(m);
+            em.flush();
+        }
+        long singleStatements = statistics.getPrepareStatementCount();
+        statistics.clear();
+
+        List<Integer> ids = batches.saveAll(room.getId(), input(MESSAGES));
+        long batchStatements = statistics.getPrepareStatementCount();
+
+        assertEquals(MESSAGES, ids.size());
+        assertEquals(MESSAGES, statistics.getEntityInsertCount());
+        assertTrue(batchStatements * 10 < singleStatements);
+    }
+
+    @Test
+    public void whenUnknownAuthorThenRejected() {
+        Message m = new Message("lost");
+        m.setPerson(Person.of(author.getId() + 100, "ghost", "ghost"));
+        assertThrows(IllegalArgumentException.class,
+                () -> batches.saveAll(room.getId(), Collections.singletonList(m)));
+    }
+
+    private List<Message> input(int size) {
+        List<Message> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Message m = new Message("batch" + i);
+            m.setPerson(Person.of(author.getId(), null, null));
+            result.add(m);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+package ru.job4j.chat.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect")
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import(MessageExportService.class)
+class MessageExportServiceTest {
+    private static final int MESSAGES = 1200;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private MessageExportService exports;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Test
+    public void whenExportThenWholeRoomInOrderAndOnlyReferencesLeftManaged() throws Exception {
+        Role role = em.persist(Role.of(0, "ROLE_USER"));
+        Person author = Person.of(0, "user", "password");
+        author.setRole(role);
+        em.persist(author);
+        Room room = em.persist(Room.of("big room"));
+        Room other = em.persist(Room.of("other room"));
+        for (int i = 0; i < MESSAGES; i++) {
+            Message m = Message.of(0, "msg" + i, author);
+            m.setRoom(i % 10 == 0 ? other : room);
+            em.persist(m);
+        }
+        em.flush();
+        em.clear();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = exports.export(room.getId(), out);
+        JsonNode result = mapper.readTree(out.toByteArray());
+        assertEquals(MESSAGES - MESSAGES / 10, count);
+        assertEquals(count, result.size());
+        assertEquals("msg1", result.get(0).get("text").asText());
+        assertEquals("user", result.get(0).get("person").get("login").asText());
+        for (int i = 1; i < result.size(); i++) {
+            assertEquals(1, Integer.signum(result.get(i).get("id").asInt() - result.get(i - 1).get("id").asInt()));
+        }
+        assertTrue(em.getEntityManager().unwrap(Session.class).getStatistics().getEntityCount() <= 3);
+    }
+}
@@ -0,0 +1,35 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MessagePartitionsTest {
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final MessagePartitions partitions = new MessagePartitions(jdbc, 3, 100);
+
+    @AfterEach
+    public void close() {
+        partitions.close();
+    }
+
+    @Test
+    public void whenCreateAheadThenFunctionCalledWithMonths() {
+        when(jdbc.queryForObject(anyString(), eq(Integer.class), anyInt())).thenReturn(2);
+        assertEquals(2, partitions.createAhead());
+        verify(jdbc, atLeastOnce()).queryForObject("select create_message_partitions(?)", Integer.class, 3);
+    }
+
+    @Test
+    public void whenCheckFailsThenKeepsScheduling() throws InterruptedException {
+        when(jdbc.queryForObject(anyString(), eq(Integer.class), anyInt())).thenThrow(new IllegalStateException("down"));
+        Thread.sleep(350);
+        verify(jdbc, atLeast(2)).queryForObject(anyString(), eq(Integer.class), anyInt());
+    }
+}
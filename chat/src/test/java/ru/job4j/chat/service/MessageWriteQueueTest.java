@@ -0,0 +1,93 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MessageWriteQueueTest {
+    private final AtomicInteger ids = new AtomicInteger();
+    private final MessageRepository messages = mock(MessageRepository.class);
+    private final PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
+    private MessageWriteQueue queue;
+
+    @AfterEach
+    public void close() throws InterruptedException {
+        queue.close();
+    }
+
+    @Test
+    public void whenManyWritersThenFewCommits() throws Exception {
+        when(txManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(messages.save(any(Message.class))).thenAnswer(inv -> {
+            Message m = inv.getArgument(0);
+            m.setId(ids.incrementAndGet());
+            return m;
+        });
+        queue = new MessageWriteQueue(messages, new TransactionTemplate(txManager), true, 1000, 50, 20, 50, 10000);
+        ExecutorService pool = Executors.newFixedThreadPool(50);
+        List<Future<Message>> saved = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Message m = new Message("msg" + i);
+            saved.add(pool.submit(() -> queue.save(m)));
+        }
+        for (Future<Message> f : saved) {
+            assertTrue(f.get().getId() > 0);
+        }
+        pool.shutdown();
+        verify(messages, times(200)).save(any(Message.class));
+        verify(txManager, atMost(40)).commit(any());
+    }
+
+    @Test
+    public void whenQueueIsFullThenRejected() throws Exception {
+        CountDownLatch taken = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(txManager.getTransaction(any())).thenAnswer(inv -> {
+            taken.countDown();
+            release.await();
+            return new SimpleTransactionStatus();
+        });
+        when(messages.save(any(Message.class))).thenAnswer(inv -> inv.getArgument(0));
+        queue = new MessageWriteQueue(messages, new TransactionTemplate(txManager), true, 1, 1, 0, 10, 10000);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        pool.submit(() -> queue.save(new Message("taken by the writer")));
+        taken.await();
+        pool.submit(() -> queue.save(new Message("fills the queue")));
+        while (queue.size() == 0) {
+            Thread.onSpinWait();
+        }
+        assertThrows(RejectedExecutionException.class, () -> queue.save(new Message("rejected")));
+        release.countDown();
+        pool.shutdown();
+    }
+
+    @Test
+    public void whenCommitTooSlowThenCallerGivesUp() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(txManager.getTransaction(any())).thenAnswer(inv -> {
+            release.await();
+            return new SimpleTransactionStatus();
+        });
+        queue = new MessageWriteQueue(messages, new TransactionTemplate(txManager), true, 1, 1, 0, 10, 50);
+        assertThrows(CommitTimeoutException.class, () -> queue.save(new Message("stuck")));
+        release.countDown();
+    }
+}
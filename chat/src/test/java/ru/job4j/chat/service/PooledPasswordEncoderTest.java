@@ -0,0 +1,70 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PooledPasswordEncoderTest {
+    private final PasswordEncoder delegate = mock(PasswordEncoder.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private PooledPasswordEncoder encoder;
+
+    @AfterEach
+    public void close() {
+        release.countDown();
+        callers.shutdownNow();
+        encoder.close();
+    }
+
+    @Test
+    public void whenDelegateAnswersThenResultPassedThrough() {
+        when(delegate.encode(any())).thenReturn("hash");
+        when(delegate.matches(any(), any())).thenReturn(true);
+        encoder = new PooledPasswordEncoder(delegate, 1, 1, 1000);
+        assertEquals("hash", encoder.encode("secret"));
+        assertTrue(encoder.matches("secret", "hash"));
+    }
+
+    @Test
+    public void whenQueueFullThenRejectedAtOnce() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        when(delegate.encode(any())).thenAnswer(inv -> {
+            started.countDown();
+            release.await();
+            return "hash";
+        });
+        encoder = new PooledPasswordEncoder(delegate, 1, 1, 10_000);
+        callers.submit(() -> encoder.encode("busy"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        callers.submit(() -> encoder.encode("queued"));
+        while (encoder.queued() == 0) {
+            Thread.sleep(5);
+        }
+        long start = System.nanoTime();
+        assertThrows(HashingRejectedException.class, () -> encoder.encode("rejected"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void whenHashingTooSlowThenRejected() {
+        when(delegate.encode(any())).thenAnswer(inv -> {
+            release.await();
+            return "hash";
+        });
+        encoder = new PooledPasswordEncoder(delegate, 1, 1, 50);
+        assertThrows(HashingRejectedException.class, () -> encoder.encode("slow"));
+    }
+}
@@ -0,0 +1,75 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PresenceRegistryTest {
+    /* three ticks of TTL, the wheel is moved by hand */
+    private final PresenceRegistry presence = new PresenceRegistry(3 * 3_600_000, 3_600_000, 4);
+
+    @AfterEach
+    public void close() {
+        presence.close();
+    }
+
+    @Test
+    public void whenHeartbeatThenOnlineInThatRoomOnly() {
+        presence.heartbeat(1, "bob");
+        presence.heartbeat(1, "alice");
+        presence.heartbeat(2, "bob");
+        assertEquals(List.of("alice", "bob"), presence.online(1));
+        assertEquals(List.of("bob"), presence.online(2));
+        assertEquals(List.of(), presence.online(3));
+        assertEquals(3, presence.getOnline());
+    }
+
+    @Test
+    public void whenNoHeartbeatForTtlThenExpired() {
+        presence.heartbeat(1, "bob");
+        advance(3);
+        assertEquals(List.of("bob"), presence.online(1));
+        advance(1);
+        assertEquals(List.of(), presence.online(1));
+        assertEquals(0, presence.getOnline());
+    }
+
+    @Test
+    public void whenHeartbeatAgainThenDeadlineMoved() {
+        presence.heartbeat(1, "bob");
+        advance(2);
+        presence.heartbeat(1, "bob");
+        advance(2);
+        assertEquals(List.of("bob"), presence.online(1));
+        advance(4);
+        assertEquals(List.of(), presence.online(1));
+    }
+
+    @Test
+    public void whenLeftThenGoneAtOnce() {
+        presence.heartbeat(1, "bob");
+        presence.leave(1, "bob");
+        assertEquals(List.of(), presence.online(1));
+        advance(5);
+        assertEquals(0, presence.getOnline());
+    }
+
+    @Test
+    public void whenExpiredAndBackThenOnlineAgain() {
+        presence.heartbeat(1, "bob");
+        advance(4);
+        presence.heartbeat(1, "bob");
+        assertEquals(List.of("bob"), presence.online(1));
+        advance(10);
+        assertEquals(List.of(), presence.online(1));
+    }
+
+    private void advance(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            presence.advance();
+        }
+    }
+}
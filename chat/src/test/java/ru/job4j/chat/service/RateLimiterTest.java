@@ -0,0 +1,76 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+    private static final Supplier<String> USER = () -> "ROLE_USER";
+    private static final Supplier<String> ADMIN = () -> RateLimiter.ROLE_ADMIN;
+
+    /* one token per hour, so none comes back during the test */
+    private final RateLimiter limiter = new RateLimiter(1.0 / 3600, 3, 1.0 / 3600, 5, 2, 3_600_000);
+
+    @AfterEach
+    public void close() {
+        limiter.close();
+    }
+
+    @Test
+    public void whenBurstUsedThenRejectedUntilNextToken() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.acquire("bob", USER));
+        }
+        long wait = limiter.acquire("bob", USER);
+        assertTrue(wait > TimeUnit.MINUTES.toNanos(59) && wait <= TimeUnit.HOURS.toNanos(1));
+        assertEquals(0, limiter.acquire("alice", USER));
+    }
+
+    @Test
+    public void whenSeveralTokensThenChargedEach() {
+        assertEquals(0, limiter.acquire("bob", USER, 2));
+        assertTrue(limiter.acquire("bob", USER, 2) > 0);
+        assertEquals(0, limiter.acquire("bob", USER, 1));
+        /* more than the burst passes once, from a full bucket */
+        assertEquals(0, limiter.acquire("alice", USER, 10));
+        long wait = limiter.acquire("alice", USER);
+        assertTrue(wait > TimeUnit.HOURS.toNanos(7) && wait <= TimeUnit.HOURS.toNanos(8));
+    }
+
+    @Test
+    public void whenAdminThenLargerBurst() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.acquire("root", ADMIN));
+        }
+        assertTrue(limiter.acquire("root", ADMIN) > 0);
+    }
+
+    @Test
+    public void whenRoleKnownThenNotAskedAgain() {
+        limiter.acquire("bob", USER);
+        limiter.acquire("bob", () -> {
+            throw new AssertionError("role asked twice");
+        });
+    }
+
+    @Test
+    public void whenRefilledThenSwept() throws InterruptedException {
+        RateLimiter fast = new RateLimiter(1000, 1, 1000, 1, 100, 3_600_000);
+        try {
+            fast.acquire("bob", USER);
+            limiter.acquire("bob", USER);
+            Thread.sleep(10);
+            fast.sweep();
+            limiter.sweep();
+            assertEquals(0, fast.getBuckets());
+            assertEquals(1, limiter.getBuckets());
+        } finally {
+            fast.close();
+        }
+    }
+}
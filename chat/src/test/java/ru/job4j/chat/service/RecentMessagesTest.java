@@ -0,0 +1,105 @@
+package ru.job4j.chat.service;
+
+import io.micrometer.core.instrument.Metrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class RecentMessagesTest {
+    private final MessageRepository messages = mock(MessageRepository.class);
+    private final RecentMessages recent = new RecentMessages(messages, 5, 2, 600000);
+
+    @AfterEach
+    public void close() {
+        recent.close();
+    }
+
+    @Test
+    public void whenReadTwiceThenDatabaseOnce() {
+        when(messages.findByRoomIdOrderByIdDesc(anyInt(), any(Pageable.class))).thenReturn(desc(1, 1, 3));
+        assertEquals(List.of(1, 2, 3), ids(recent.latest(1, 5).get()));
+        assertEquals(List.of(2, 3), ids(recent.latest(1, 2).get()));
+        verify(messages, times(1)).findByRoomIdOrderByIdDesc(anyInt(), any(Pageable.class));
+        assertEquals(1, recent.getHits());
+        assertEquals(1, recent.getMisses());
+        assertNotNull(Metrics.globalRegistry.find("chat.recent.gets").tag("result", "hit").functionCounter());
+        assertNotNull(Metrics.globalRegistry.find("chat.recent.gets").tag("result", "miss").functionCounter());
+    }
+
+    @Test
+    public void whenNewMessagesThenOldestDropped() {
+        when(messages.findByRoomIdOrderByIdDesc(anyInt(), any(Pageable.class))).thenReturn(desc(1, 1, 5));
+        recent.latest(1, 5);
+        recent.onCreated(new MessageCreatedEvent(message(1, 7)));
+        recent.onCreated(new MessageCreatedEvent(message(1, 6)));
+        recent.onCreated(new MessageCreatedEvent(message(1, 7)));
+        assertEquals(List.of(3, 4, 5, 6, 7), ids(recent.latest(1, 5).get()));
+    }
+
+    @Test
+    public void whenDeletedFromFullBufferThenReloaded() {
+        when(messages.findByRoomIdOrderByIdDesc(anyInt(), any(Pageable.class)))
+                .thenReturn(desc(1, 1, 5))
+                .thenReturn(desc(1, 1, 4));
+        recent.latest(1, 5);
+        recent.onDeleted(new MessageDeletedEvent(1, 5));
+        assertEquals(List.of(1, 2, 3, 4), ids(recent.latest(1, 5).get()));
+        verify(messages, times(2)).findByRoomIdOrderByIdDesc(anyInt(), any(Pageable.class));
+    }
+
+    @Test
+    public void whenLimitOverCapacityThenBypassed() {
+        assertTrue(recent.latest(1, 6).isEmpty());
+        verifyNoInteractions(messages);
+    }
+
+    @Test
+    public void whenTooManyRoomsThenLeastRecentlyReadEvicted() throws InterruptedException {
+        when(messages.findByRoomIdOrderByIdDesc(anyInt(), any(Pageable.class))).thenReturn(new ArrayList<>());
+        recent.latest(1, 5);
+        Thread.sleep(5);
+        recent.latest(2, 5);
+        Thread.sleep(5);
+        recent.latest(1, 5);
+        Thread.sleep(5);
+        recent.latest(3, 5);
+        assertEquals(2, recent.getRooms());
+        recent.latest(1, 5);
+        assertEquals(3, recent.getMisses());
+    }
+
+    private static Message message(int room, int id) {
+        Room r = Room.of("room" + room);
+        r.setId(room);
+        Message m = Message.of(id, "msg" + id, Person.of(1, "user", "user"));
+        m.setRoom(r);
+        return m;
+    }
+
+    private static List<Message> desc(int room, int from, int to) {
+        List<Message> result = new ArrayList<>();
+        for (int id = to; id >= from; id--) {
+            result.add(message(room, id));
+        }
+        return result;
+    }
+
+    private static List<Integer> ids(List<Message> messages) {
+        return messages.stream().map(Message::getId).collect(Collectors.toList());
+    }
+}
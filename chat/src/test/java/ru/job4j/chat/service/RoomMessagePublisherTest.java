@@ -0,0 +1,40 @@
+package ru.job4j.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class RoomMessagePublisherTest {
+    private final SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+    private final RoomMessagePublisher publisher =
+            new RoomMessagePublisher(template, new MessageFrames(new ObjectMapper()));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void whenSavedThenSentToRoomTopic() {
+        Room room = Room.of("room3");
+        room.setId(3);
+        ru.job4j.chat.model.Message message = ru.job4j.chat.model.Message.of(7, "hello", Person.of(1, "user", "user"));
+        message.setRoom(room);
+        publisher.onCreated(new MessageCreatedEvent(message));
+        ArgumentCaptor<Message<byte[]>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(template).send(eq("/topic/rooms/3"), sent.capture());
+        assertEquals(MimeTypeUtils.APPLICATION_JSON, sent.getValue().getHeaders().get(MessageHeaders.CONTENT_TYPE));
+        String json = new String(sent.getValue().getPayload(), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{\"id\":7,\"text\":\"hello\""), json);
+    }
+}
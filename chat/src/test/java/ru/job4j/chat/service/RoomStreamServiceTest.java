@@ -0,0 +1,110 @@
+package ru.job4j.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class RoomStreamServiceTest {
+    private final MessageFrames frames = spy(new MessageFrames(new ObjectMapper()));
+    private final MessageRepository messages = mock(MessageRepository.class);
+    private final RoomStreamService streams =
+            new RoomStreamService(messages, frames, 60000, 600000, 2, 1);
+    private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new Streams(streams)).build();
+
+    @AfterEach
+    public void close() {
+        streams.close();
+    }
+
+    @Test
+    public void whenManySubscribersThenSerializedOnce() throws Exception {
+        MvcResult first = subscribe(1);
+        MvcResult second = subscribe(1);
+        streams.onCreated(new MessageCreatedEvent(message(1, 7)));
+        String expected = "id:7\ndata:{\"id\":7,\"text\":\"msg7\"";
+        awaitContains(first, expected);
+        awaitContains(second, expected);
+        verify(frames, times(1)).of(any(Message.class));
+    }
+
+    @Test
+    public void whenOtherRoomThenNothingSerialized() throws Exception {
+        subscribe(1);
+        streams.onCreated(new MessageCreatedEvent(message(2, 7)));
+        verify(frames, never()).of(any(Message.class));
+        assertEquals(1, streams.subscribers(1));
+    }
+
+    @Test
+    public void whenSavedDuringReplayThenEveryIdOnce() throws Exception {
+        when(messages.findByRoomIdAndIdGreaterThanOrderByIdAsc(eq(1), eq(5), any())).thenAnswer(inv -> {
+            /* 7 commits after 8 and both are published while the replay runs */
+            streams.onCreated(new MessageCreatedEvent(message(1, 7)));
+            streams.onCreated(new MessageCreatedEvent(message(1, 8)));
+            return List.of(message(1, 6), message(1, 8));
+        });
+        MvcResult result = mockMvc.perform(get("/streams/1").header("Last-Event-ID", "5"))
+                .andExpect(request().asyncStarted()).andReturn();
+        awaitContains(result, "id:7\n");
+        String body = result.getResponse().getContentAsString();
+        assertTrue(body.indexOf("id:6\n") < body.indexOf("id:8\n") && body.indexOf("id:8\n") < body.indexOf("id:7\n"), body);
+        assertEquals(body.indexOf("id:8\n"), body.lastIndexOf("id:8\n"), body);
+    }
+
+    private MvcResult subscribe(int room) throws Exception {
+        return mockMvc.perform(get("/streams/" + room)).andExpect(request().asyncStarted()).andReturn();
+    }
+
+    private static void awaitContains(MvcResult result, String expected) throws Exception {
+        for (int i = 0; i < 100 && !result.getResponse().getContentAsString().contains(expected); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(result.getResponse().getContentAsString().contains(expected),
+                result.getResponse().getContentAsString());
+    }
+
+    private static Message message(int room, int id) {
+        Room r = Room.of("room" + room);
+        r.setId(room);
+        Message m = Message.of(id, "msg" + id, Person.of(1, "user", "user"));
+        m.setRoom(r);
+        return m;
+    }
+
+    @RestController
+    static class Streams {
+        private final RoomStreamService streams;
+
+        Streams(RoomStreamService streams) {
+            this.streams = streams;
+        }
+
+        @GetMapping("/streams/{id}")
+        public SseEmitter stream(@PathVariable int id,
+                                 @RequestHeader(value = "Last-Event-ID", required = false) Integer lastEventId) {
+            return streams.subscribe(id, lastEventId);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.MessageShards;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoomRepository;
+import ru.job4j.chat.repository.ShardedMessageRepository;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ShardRebalancerTest {
+    private static final int ROOM = 7;
+    private static final int MESSAGES = 2500;
+
+    private final List<DataSource> databases = List.of(database("db/shard/001.sql"),
+            database("db/shard/001.sql"), database("db/shard/001.sql"));
+    private final JdbcTemplate main = new JdbcTemplate(database("db/007.sql"));
+    private final MessageShards shards = new MessageShards(databases, main, 64, 60000);
+    private final ShardedMessageRepository messages = new ShardedMessageRepository(shards, persons(), rooms());
+    private final ShardRebalancer rebalancer = new ShardRebalancer(shards, 1000, 0);
+
+    @AfterEach
+    public void close() throws IOException {
+        rebalancer.close();
+        shards.close();
+    }
+
+    @Test
+    public void whenMovedThenRoomServedFromTarget() {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            batch.add(message("m" + i));
+        }
+        messages.saveAll(batch);
+        int source = shards.shardOf(ROOM);
+        int target = (source + 1) % 3;
+        ShardRebalancer.Moved moved = rebalancer.move(ROOM, target);
+        assertEquals(MESSAGES, moved.getCopied());
+        assertEquals(MESSAGES, moved.getDeleted());
+        assertEquals(target, shards.shardOf(ROOM));
+        assertEquals(0, count(source));
+        assertEquals(MESSAGES, count(target));
+        List<Message> history = messages.getByRoomId(ROOM);
+        assertEquals(MESSAGES, history.size());
+        assertEquals("m0", history.get(0).getText());
+        messages.save(message("after"));
+        assertEquals(MESSAGES + 1, count(target));
+    }
+
+    @Test
+    public void whenDeletedDuringGraceThenNotCopiedBack() throws Exception {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(message("m" + i));
+        }
+        List<Message> saved = new ArrayList<>();
+        messages.saveAll(batch).forEach(saved::add);
+        int source = shards.shardOf(ROOM);
+        int target = (source + 1) % 3;
+        ShardRebalancer slow = new ShardRebalancer(shards, 1000, 2000);
+        CompletableFuture<ShardRebalancer.Moved> moving = CompletableFuture.supplyAsync(() -> slow.move(ROOM, target));
+        while (shards.shardOf(ROOM) != target) {
+            Thread.onSpinWait();
+        }
+        messages.deleteById(saved.get(0).getId());
+        /* a node still routing the room to the source */
+        shards.jdbc(source).update("delete from message where id = ?", saved.get(1).getId());
+        assertEquals(10, moving.get(10, TimeUnit.SECONDS).getCopied());
+        slow.close();
+        assertEquals(8, count(target));
+        assertEquals(0, count(source));
+    }
+
+    @Test
+    public void whenPlacedThenOtherNodesRouteToTarget() {
+        int target = (shards.shardOf(ROOM) + 1) % 3;
+        rebalancer.move(ROOM, target);
+        MessageShards other = new MessageShards(databases, main, 64, 60000);
+        assertEquals(target, other.shardOf(ROOM));
+    }
+
+    @Test
+    public void whenNoSuchShardThenRejected() {
+        assertThrows(IllegalArgumentException.class, () -> rebalancer.move(ROOM, 3));
+        assertEquals(0, rebalancer.move(ROOM, shards.shardOf(ROOM)).getCopied());
+    }
+
+    private long count(int shard) {
+        return shards.jdbc(shard).queryForObject(
+                "select count(*) from message where room_id = ?", Long.class, ROOM);
+    }
+
+    private static DataSource database(String schema) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource(schema)).execute(dataSource);
+        return dataSource;
+    }
+
+    private static Message message(String text) {
+        Message m = Message.of(0, text, Person.of(1, "user1", "password"));
+        Room room = Room.of("room");
+        room.setId(ROOM);
+        m.setRoom(room);
+        return m;
+    }
+
+    private static PersonRepository persons() {
+        PersonRepository persons = mock(PersonRepository.class);
+        when(persons.findById(anyInt())).thenReturn(Optional.of(Person.of(1, "user1", "password")));
+        return persons;
+    }
+
+    private static RoomRepository rooms() {
+        RoomRepository rooms = mock(RoomRepository.class);
+        when(rooms.findById(anyInt())).thenReturn(Optional.of(Room.of("room")));
+        return rooms;
+    }
+}
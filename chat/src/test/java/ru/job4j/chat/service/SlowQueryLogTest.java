@@ -0,0 +1,72 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlowQueryLogTest {
+    private final SlowQueryLog log = new SlowQueryLog(0, 1.0, 10, false);
+
+    @AfterEach
+    public void close() {
+        log.close();
+    }
+
+    private JdbcTemplate jdbc() {
+        DataSource h2 = new DriverManagerDataSource("jdbc:h2:mem:slow;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbc = new JdbcTemplate(log.wrap(h2, "test"));
+        jdbc.execute("create table if not exists message (id int primary key, text varchar(100))");
+        return jdbc;
+    }
+
+    @Test
+    public void whenStatementsThenGroupedByShape() {
+        JdbcTemplate jdbc = jdbc();
+        for (int i = 0; i < 5; i++) {
+            jdbc.update("insert into message (id, text) values (?, ?)", i, "text" + i);
+            jdbc.queryForList("select text from message where id = " + i);
+        }
+        List<SlowQueryLog.Shape> top = log.top(10);
+        assertEquals(5, top.stream()
+                .filter(s -> s.getSql().equals("insert into message (id, text) values (?, ?)"))
+                .findFirst().orElseThrow().getCount());
+        assertEquals(5, top.stream()
+                .filter(s -> s.getSql().equals("select text from message where id = ?"))
+                .findFirst().orElseThrow().getCount());
+    }
+
+    @Test
+    public void whenShapesAboveLimitThenNotTracked() {
+        JdbcTemplate jdbc = jdbc();
+        for (int i = 0; i < 20; i++) {
+            jdbc.queryForList("select text from message m" + i);
+        }
+        assertEquals(10, log.top(100).size());
+    }
+
+    @Test
+    public void whenWriteThenNeverExplained() {
+        assertTrue(log.shouldExplain("select * from message"));
+        assertFalse(log.shouldExplain("update message set text = ?"));
+        assertFalse(log.shouldExplain("delete from message"));
+    }
+
+    @Test
+    public void whenSeveralWrappedThenEachKeepsItsTarget() {
+        DataSource main = new DriverManagerDataSource("jdbc:h2:mem:main", "sa", "");
+        DataSource shard = new DriverManagerDataSource("jdbc:h2:mem:shard", "sa", "");
+        log.wrap(main, "dataSource");
+        log.wrap(shard, "shard-0");
+        assertSame(main, log.target("dataSource"));
+        assertSame(shard, log.target("shard-0"));
+    }
+}
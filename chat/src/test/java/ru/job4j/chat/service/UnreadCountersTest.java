@@ -0,0 +1,131 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.ReadMarker;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.MessageRepository;
+import ru.job4j.chat.repository.ReadMarkerRepository;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class UnreadCountersTest {
+    private final ReadMarkerRepository markers = mock(ReadMarkerRepository.class);
+    private final MessageRepository messages = mock(MessageRepository.class);
+    private final UnreadCounters counters = new UnreadCounters(markers, messages, 600000);
+
+    @AfterEach
+    public void close() {
+        counters.close();
+    }
+
+    @Test
+    public void whenOthersPostThenFollowersCounted() {
+        counters.markRead(1, 10, 0);
+        counters.onCreated(new MessageCreatedEvent(message(10, 1, 2)));
+        counters.onCreated(new MessageCreatedEvent(message(10, 2, 2)));
+        assertEquals(Map.of(10, 2L), counters.unread(1));
+        counters.onCreated(new MessageCreatedEvent(message(10, 3, 1)));
+        assertEquals(Map.of(10, 0L), counters.unread(1));
+        assertEquals(Map.of(10, 1L), counters.unread(2));
+        verify(markers, times(1)).findByRoomId(10);
+    }
+
+    @Test
+    public void whenMarkedReadUpToNewestThenNoCount() {
+        counters.markRead(1, 10, 0);
+        counters.onCreated(new MessageCreatedEvent(message(10, 1, 2)));
+        counters.onCreated(new MessageCreatedEvent(message(10, 2, 2)));
+        assertEquals(0, counters.markRead(1, 10, 2));
+        verify(messages, never()).countByRoomIdAndIdGreaterThan(anyInt(), anyInt());
+    }
+
+    @Test
+    public void whenMarkedReadInTheMiddleThenCounted() {
+        counters.markRead(1, 10, 0);
+        counters.onCreated(new MessageCreatedEvent(message(10, 1, 2)));
+        counters.onCreated(new MessageCreatedEvent(message(10, 2, 2)));
+        when(messages.countByRoomIdAndIdGreaterThan(10, 1)).thenReturn(1L);
+        assertEquals(1, counters.markRead(1, 10, 1));
+        assertEquals(1, counters.markRead(1, 10, 0));
+        assertEquals(Map.of(10, 1L), counters.unread(1));
+    }
+
+    @Test
+    public void whenMarkedPastNewestThenNewestMarked() {
+        when(messages.findByRoomIdOrderByIdDesc(eq(10), any())).thenReturn(List.of(message(10, 5, 2)));
+        when(messages.countByRoomIdAndIdGreaterThan(10, 3)).thenReturn(2L);
+        assertEquals(2, counters.markRead(1, 10, 3));
+        assertEquals(0, counters.markRead(1, 10, Integer.MAX_VALUE));
+        counters.onCreated(new MessageCreatedEvent(message(10, 6, 2)));
+        assertEquals(Map.of(10, 1L), counters.unread(1));
+    }
+
+    @Test
+    public void whenReadOnOtherNodeThenMarked() {
+        counters.markRead(1, 10, 0);
+        counters.onCreated(new MessageCreatedEvent(message(10, 1, 2)));
+        counters.onRead(new RoomReadEvent(1, 10, 1));
+        assertEquals(Map.of(10, 1L), counters.unread(1));
+        counters.onRead(new RoomReadEvent(1, 10, 1, true));
+        assertEquals(Map.of(10, 0L), counters.unread(1));
+    }
+
+    @Test
+    public void whenUnreadMessageDeletedThenDecremented() {
+        counters.markRead(1, 10, 0);
+        counters.onCreated(new MessageCreatedEvent(message(10, 1, 2)));
+        counters.onDeleted(new MessageDeletedEvent(10, 1));
+        counters.onDeleted(new MessageDeletedEvent(10, 1));
+        assertEquals(Map.of(10, 0L), counters.unread(1));
+    }
+
+    @Test
+    public void whenOwnMessageDeletedThenAuthorNotDecremented() {
+        /* the markers were written before the author's post reached them */
+        when(markers.findByRoomId(10)).thenReturn(List.of(ReadMarker.of(1, 10, 0, 2), ReadMarker.of(2, 10, 0, 1)));
+        counters.markRead(3, 10, 0);
+        counters.onDeleted(new MessageDeletedEvent(10, 2, 2));
+        assertEquals(Map.of(10, 1L), counters.unread(1));
+        assertEquals(Map.of(10, 1L), counters.unread(2));
+    }
+
+    @Test
+    public void whenPersonListedThenLoadedOnce() {
+        when(markers.findByPersonId(1)).thenReturn(List.of(ReadMarker.of(1, 10, 5, 3), ReadMarker.of(1, 11, 7, 0)));
+        assertEquals(Map.of(10, 3L, 11, 0L), counters.unread(1));
+        assertEquals(Map.of(10, 3L, 11, 0L), counters.unread(1));
+        verify(markers, times(1)).findByPersonId(1);
+    }
+
+    @Test
+    public void whenFlushedThenChangedCountersWrittenOnce() {
+        when(markers.update(1, 10, 0, 1)).thenReturn(0);
+        when(markers.update(2, 10, 1, 0)).thenReturn(1);
+        counters.markRead(1, 10, 0);
+        counters.onCreated(new MessageCreatedEvent(message(10, 1, 2)));
+        counters.flush();
+        counters.flush();
+        verify(markers).save(ReadMarker.of(1, 10, 0, 1));
+        verify(markers, times(2)).update(anyInt(), anyInt(), anyInt(), anyLong());
+        verify(markers, times(1)).save(any());
+    }
+
+    private static Message message(int room, int id, int author) {
+        Room r = Room.of("room" + room);
+        r.setId(room);
+        Message m = Message.of(id, "msg" + id, Person.of(author, "user" + author, "user"));
+        m.setRoom(r);
+        return m;
+    }
+}